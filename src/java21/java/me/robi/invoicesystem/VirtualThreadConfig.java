@@ -0,0 +1,41 @@
+package me.robi.invoicesystem;
+
+import me.robi.invoicesystem.controllers.invoice.types.PdfInvoiceType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves requests on virtual threads, so the blocking database and file I/O of a request
+ * doesn't hold on to one of the connector's platform threads.
+ *
+ * Rendering PDF files is CPU-bound, it's moved off the virtual threads onto a bounded
+ * pool of platform threads so that many concurrent renders can't oversubscribe the cores.
+ * The stored, streamed and bulk PDF files are all rendered on it.
+ *
+ * Only compiled by the java21 profile, and enabled with {@code invoice.virtual-threads.enabled=true}.
+ */
+@Configuration
+@ConditionalOnProperty(value = "invoice.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadExecutorCustomizer() {
+        return protocolHandler -> protocolHandler.setExecutor(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("http-virtual-", 0).factory()));
+    }
+
+    @Bean(name = PdfInvoiceType.PDF_RENDER_EXECUTOR, destroyMethod = "shutdown")
+    public ExecutorService pdfRenderExecutor(@Value("${invoice.virtual-threads.render-threads:0}") int threads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors(), runnable -> {
+            Thread thread = new Thread(runnable, "pdf-render-sync-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
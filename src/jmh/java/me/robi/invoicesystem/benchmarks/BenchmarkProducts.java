@@ -0,0 +1,49 @@
+package me.robi.invoicesystem.benchmarks;
+
+import me.robi.invoicesystem.controllers.invoice.types.InvoiceLine;
+import me.robi.invoicesystem.entities.ProductEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Creates synthetic products for the benchmarks.
+ */
+public class BenchmarkProducts {
+    /**
+     * @param count Amount of products
+     * @return Products with the IDs 1 to {@param count}
+     */
+    public static List<ProductEntity> create(int count) {
+        List<ProductEntity> products = new ArrayList<>(count);
+        for(int i = 1; i <= count; i++) {
+            ProductEntity product = new ProductEntity("Product " + i, i % 100);
+            ReflectionTestUtils.setField(product, "id", (long) i);
+            products.add(product);
+        }
+        return products;
+    }
+
+    /**
+     * @param count Amount of lines
+     * @return Lines of the products with the IDs 1 to {@param count}, the quantity of every line cycling from 1 to 5
+     */
+    public static List<InvoiceLine> lines(int count) {
+        List<InvoiceLine> lines = new ArrayList<>(count);
+        for(ProductEntity product : create(count))
+            lines.add(new InvoiceLine(product, product.getId() % 5 + 1));
+        return lines;
+    }
+
+    /**
+     * @param lines Lines of an invoice
+     * @return Sum of the line total of every line
+     */
+    public static long sum(List<InvoiceLine> lines) {
+        long sum = 0;
+        for(InvoiceLine line : lines)
+            sum += line.getLineTotal();
+        return sum;
+    }
+}
@@ -0,0 +1,27 @@
+package me.robi.invoicesystem.benchmarks;
+
+import me.robi.invoicesystem.controllers.invoice.types.PdfInvoiceType;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link PdfInvoiceType#verifyFileName(String)}, run on every PDF access.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileNameBenchmark {
+    @Param({"0123456789abcdef0123456789abcdef.pdf", "../../etc/passwd.pdf"})
+    private String fileName;
+
+    private final PdfInvoiceType pdfInvoiceType = new PdfInvoiceType();
+
+    @Benchmark
+    public boolean verifyFileName() {
+        return pdfInvoiceType.verifyFileName(fileName);
+    }
+}
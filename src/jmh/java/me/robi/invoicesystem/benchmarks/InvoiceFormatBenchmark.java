@@ -0,0 +1,84 @@
+package me.robi.invoicesystem.benchmarks;
+
+import me.robi.invoicesystem.controllers.invoice.types.BinaryInvoiceType;
+import me.robi.invoicesystem.controllers.invoice.types.CsvInvoiceType;
+import me.robi.invoicesystem.controllers.invoice.types.InvoiceLine;
+import me.robi.invoicesystem.controllers.invoice.types.InvoiceType;
+import me.robi.invoicesystem.controllers.invoice.types.RawInvoiceType;
+import me.robi.invoicesystem.controllers.invoice.types.StreamingInvoiceType;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Measures writing an invoice in every data format, and compressing it with gzip
+ * as the server would. The payload sizes are reported as auxiliary counters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InvoiceFormatBenchmark {
+    @Param({InvoiceType.RAW_INVOICE, InvoiceType.CBOR_INVOICE, InvoiceType.SMILE_INVOICE, InvoiceType.CSV_INVOICE})
+    private String format;
+
+    @Param({"10", "1000", "100000"})
+    private int lines;
+
+    private StreamingInvoiceType invoiceType;
+    private List<InvoiceLine> invoiceLines;
+    private long sum;
+
+    /**
+     * Size of the written payloads, reported once per iteration.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class PayloadSize {
+        public long bytes;
+        public long gzipBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+            gzipBytes = 0;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        invoiceType = switch(format) {
+            case InvoiceType.CBOR_INVOICE -> BinaryInvoiceType.cbor();
+            case InvoiceType.SMILE_INVOICE -> BinaryInvoiceType.smile();
+            case InvoiceType.CSV_INVOICE -> new CsvInvoiceType();
+            default -> new RawInvoiceType();
+        };
+        invoiceLines = BenchmarkProducts.lines(lines);
+        sum = BenchmarkProducts.sum(invoiceLines);
+    }
+
+    @Benchmark
+    public byte[] write(PayloadSize size) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        invoiceType.write(invoiceLines, sum, outputStream);
+        size.bytes = outputStream.size();
+        return outputStream.toByteArray();
+    }
+
+    @Benchmark
+    public void writeGzip(PayloadSize size, Blackhole blackhole) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try(GZIPOutputStream gzipStream = new GZIPOutputStream(outputStream)) {
+            invoiceType.write(invoiceLines, sum, gzipStream);
+        }
+        size.gzipBytes = outputStream.size();
+        blackhole.consume(outputStream.toByteArray());
+    }
+}
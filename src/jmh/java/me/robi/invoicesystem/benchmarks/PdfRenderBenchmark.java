@@ -0,0 +1,39 @@
+package me.robi.invoicesystem.benchmarks;
+
+import com.itextpdf.text.DocumentException;
+import me.robi.invoicesystem.controllers.invoice.types.InvoiceLine;
+import me.robi.invoicesystem.controllers.invoice.types.PdfInvoiceType;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link PdfInvoiceType#generatePdf(List, long, OutputStream)}, discarding the output.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PdfRenderBenchmark {
+    @Param({"10", "1000", "100000"})
+    private int lines;
+
+    private final PdfInvoiceType pdfInvoiceType = new PdfInvoiceType();
+    private List<InvoiceLine> invoiceLines;
+    private long sum;
+
+    @Setup
+    public void setup() {
+        invoiceLines = BenchmarkProducts.lines(lines);
+        sum = BenchmarkProducts.sum(invoiceLines);
+    }
+
+    @Benchmark
+    public Object generatePdf() throws DocumentException {
+        return pdfInvoiceType.generatePdf(invoiceLines, sum, OutputStream.nullOutputStream());
+    }
+}
@@ -0,0 +1,95 @@
+package me.robi.invoicesystem.benchmarks;
+
+import me.robi.invoicesystem.controllers.invoice.ProductQuantitiesArgumentResolver;
+import me.robi.invoicesystem.controllers.invoice.types.InvoiceLine;
+import me.robi.invoicesystem.entities.ProductEntity;
+import me.robi.invoicesystem.repositories.ProductCatalog;
+import me.robi.invoicesystem.repositories.ProductQuantities;
+import me.robi.invoicesystem.repositories.ProductRepository;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.bind.ServletRequestBindingException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the ID to product resolution of {@code InvoiceController.createInvoice}, from parsing
+ * the {@code id} parameter to the aggregated lines, once with every product cached and once with
+ * an empty cache, which goes to the (in-memory) repository.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductResolutionBenchmark {
+    private static final int CATALOG_SIZE = 10_000;
+
+    @Param({"10", "1000", "50000"})
+    private int lines;
+
+    /**
+     * Amount of distinct products the lines are picked from.
+     */
+    @Param({"200", "10000"})
+    private int distinctProducts;
+
+    private ProductCatalog catalog;
+    private String id;
+
+    @Setup
+    public void setup() {
+        List<ProductEntity> products = BenchmarkProducts.create(CATALOG_SIZE);
+        ProductRepository repository = Mockito.mock(ProductRepository.class);
+        Mockito.when(repository.findAllById(Mockito.any())).thenAnswer(invocation -> {
+            List<ProductEntity> found = new ArrayList<>();
+            for(Long id : invocation.<Iterable<Long>>getArgument(0))
+                found.add(products.get((int) (id - 1)));
+            return found;
+        });
+
+        catalog = new ProductCatalog();
+        ReflectionTestUtils.setField(catalog, "productRepository", repository);
+        ReflectionTestUtils.setField(catalog, "maxSize", CATALOG_SIZE);
+
+        Random random = new Random(0);
+        StringJoiner joiner = new StringJoiner(",");
+        for(int i = 0; i < lines; i++)
+            joiner.add(String.valueOf(random.nextInt(distinctProducts) + 1));
+        id = joiner.toString();
+    }
+
+    @Benchmark
+    public long resolveCached() throws ServletRequestBindingException {
+        return resolve();
+    }
+
+    @Benchmark
+    public long resolveUncached() throws ServletRequestBindingException {
+        catalog.invalidateAll();
+        return resolve();
+    }
+
+    /**
+     * Same steps as the argument resolver and {@code InvoiceController.createInvoice}.
+     */
+    private long resolve() throws ServletRequestBindingException {
+        ProductQuantities quantities = new ProductQuantities();
+        ProductQuantitiesArgumentResolver.parse(id, quantities);
+        ProductEntity[] products = catalog.getProducts(quantities.getIds());
+        List<InvoiceLine> invoiceLines = new ArrayList<>(products.length);
+        long amountSum = 0;
+        for(int i = 0; i < products.length; i++) {
+            InvoiceLine line = new InvoiceLine(products[i], quantities.getQuantity(i));
+            invoiceLines.add(line);
+            amountSum += line.getLineTotal();
+        }
+        return amountSum + invoiceLines.size();
+    }
+}
@@ -0,0 +1,58 @@
+package me.robi.invoicesystem.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import me.robi.invoicesystem.controllers.invoice.types.InvoiceLine;
+import me.robi.invoicesystem.controllers.invoice.types.RawInvoiceType;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static me.robi.invoicesystem.constants.ResponseConstants.InvoiceResponseConstants.PRODUCTS_LIST;
+import static me.robi.invoicesystem.constants.ResponseConstants.InvoiceResponseConstants.PRODUCTS_SUM;
+
+/**
+ * Measures {@link RawInvoiceType} writing its JSON, compared to serializing
+ * the same response as a map through Jackson's reflection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RawInvoiceBenchmark {
+    @Param({"10", "1000", "100000"})
+    private int lines;
+
+    private final RawInvoiceType rawInvoiceType = new RawInvoiceType();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private List<InvoiceLine> invoiceLines;
+    private long sum;
+
+    @Setup
+    public void setup() {
+        invoiceLines = BenchmarkProducts.lines(lines);
+        sum = BenchmarkProducts.sum(invoiceLines);
+    }
+
+    @Benchmark
+    public byte[] write() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        rawInvoiceType.write(invoiceLines, sum, outputStream);
+        return outputStream.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] serializeMap() throws JsonProcessingException {
+        Map<String, Object> responseBody = new HashMap<>();
+        responseBody.put(PRODUCTS_LIST, invoiceLines);
+        responseBody.put(PRODUCTS_SUM, sum);
+        return objectMapper.writeValueAsBytes(responseBody);
+    }
+}
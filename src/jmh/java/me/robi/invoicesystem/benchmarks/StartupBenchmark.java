@@ -0,0 +1,106 @@
+package me.robi.invoicesystem.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from launching a new instance to its first successful invoice, once with the regular
+ * executable jar and once with the build of the fast-start profile, with its AOT processed
+ * context, AppCDS archive and deferred startup tasks.
+ *
+ * Both builds need to be packaged, run with: ./mvnw -P fast-start,benchmark verify -Djmh.args="Startup"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StartupBenchmark {
+    private static final Path TARGET = Paths.get("target");
+    private static final Path FAST_START = TARGET.resolve("fast-start");
+
+    @Param({"regular", "fast-start"})
+    private String build;
+
+    private List<String> command;
+    private Path directory;
+    private HttpClient client;
+    private Process process;
+
+    @Setup
+    public void setup() throws IOException {
+        command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        if(build.equals("fast-start")) {
+            directory = FAST_START;
+            command.addAll(List.of("-XX:SharedArchiveFile=app.jsa", "-Dspring.aot.enabled=true", "-Dspring.profiles.active=fast-start"));
+            command.addAll(List.of("-jar", findJar(FAST_START, "*-fast-start.jar")));
+        } else {
+            directory = TARGET;
+            command.addAll(List.of("-jar", findJar(TARGET, "invoicesystem-*.jar")));
+        }
+        client = HttpClient.newHttpClient();
+    }
+
+    @Benchmark
+    public int firstInvoice() throws IOException, InterruptedException {
+        int port;
+        try(ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        List<String> instance = new ArrayList<>(command);
+        instance.add("--server.port=" + port);
+        process = new ProcessBuilder(instance).directory(directory.toFile())
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/invoice/raw?id=1")).build();
+        while(true) {
+            if(!process.isAlive())
+                throw new IllegalStateException("The instance exited with " + process.exitValue());
+            try {
+                HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                if(response.statusCode() == 200)
+                    return response.statusCode();
+            } catch (ConnectException e) {
+                // not listening yet
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void stopInstance() throws InterruptedException {
+        if(process != null) {
+            process.destroy();
+            process.waitFor();
+            process = null;
+        }
+    }
+
+    private static String findJar(Path directory, String glob) throws IOException {
+        if(Files.isDirectory(directory)) {
+            try(DirectoryStream<Path> jars = Files.newDirectoryStream(directory, glob)) {
+                for(Path jar : jars)
+                    return jar.getFileName().toString();
+            }
+        }
+        throw new IllegalStateException(String.format("No %s in %s, package with: ./mvnw -P fast-start package", glob, directory));
+    }
+}
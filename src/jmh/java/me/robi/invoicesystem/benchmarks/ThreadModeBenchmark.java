@@ -0,0 +1,84 @@
+package me.robi.invoicesystem.benchmarks;
+
+import me.robi.invoicesystem.InvoiceSystemApplication;
+import me.robi.invoicesystem.constants.PathConstants;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load comparison of serving requests on platform and on virtual threads. Starts the
+ * whole application, and fires a batch of concurrent requests at it per operation.
+ *
+ * The virtual mode needs the java21 profile, it fails on older builds instead of
+ * silently measuring platform threads twice.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ThreadModeBenchmark {
+    @Param({"platform", "virtual"})
+    private String mode;
+
+    @Param({"50", "500"})
+    private int concurrency;
+
+    @Param({"/api/invoice/raw?id=1&id=2&id=3", "/api/invoice/pdf?id=1&id=2&id=3&id=4&id=5", "/api/products?after=0&limit=5"})
+    private String path;
+
+    private ConfigurableApplicationContext context;
+    private ExecutorService clientExecutor;
+    private HttpClient client;
+    private HttpRequest request;
+
+    @Setup
+    public void setup() throws Exception {
+        boolean virtual = mode.equals("virtual");
+        if(virtual && Runtime.version().feature() < 21)
+            throw new IllegalStateException("Virtual threads need a Java 21 build, run with -P java21");
+
+        Files.createDirectories(Paths.get(PathConstants.TEST_PDF_FILE_STORAGE));
+        context = new SpringApplicationBuilder(InvoiceSystemApplication.class)
+                .properties(
+                        "server.port=0",
+                        "invoice.virtual-threads.enabled=" + virtual,
+                        "invoice.pdf.storage-directory=" + PathConstants.TEST_PDF_FILE_STORAGE,
+                        "logging.level.root=WARN")
+                .run();
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+
+        clientExecutor = Executors.newFixedThreadPool(Math.min(concurrency, 64));
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).executor(clientExecutor).build();
+        request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path)).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+        clientExecutor.shutdown();
+    }
+
+    @Benchmark
+    public int batch() {
+        CompletableFuture<?>[] responses = new CompletableFuture[concurrency];
+        for(int i = 0; i < concurrency; i++)
+            responses[i] = client.sendAsync(request, HttpResponse.BodyHandlers.discarding());
+        CompletableFuture.allOf(responses).join();
+        return responses.length;
+    }
+}
@@ -0,0 +1,282 @@
+package me.robi.invoicesystem.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import me.robi.invoicesystem.InvoiceSystemApplication;
+import me.robi.invoicesystem.constants.ResponseConstants;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.TypeExcludeFilter;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.type.classreading.MetadataReader;
+import org.springframework.core.type.classreading.MetadataReaderFactory;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Puts a mix of production-style requests on the real application, booted in-process on a random
+ * port with a seeded synthetic catalog, and reports the latency percentiles, throughput and error
+ * rates of every operation as JSON.
+ *
+ * Requests are sent at a fixed rate whether or not the previous ones were answered (an open
+ * model), like independent clients would. Everything random is seeded, so two runs of the
+ * same options send the same requests in the same order and their reports can be compared.
+ *
+ * Run with: ./mvnw -P loadtest verify -Dloadtest.args="--rate=500 --mix=raw:1,pdf:1"
+ * See {@link LoadTestOptions} for the options.
+ */
+public class LoadTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        Path storage = Files.createTempDirectory("loadtest-pdf-invoices");
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(InvoiceSystemApplication.class)
+                .initializers(applicationContext -> applicationContext.getBeanFactory().registerSingleton("testConfigurationExcludeFilter", new TestConfigurationExcludeFilter()))
+                .properties(
+                        "server.port=0",
+                        "invoice.pdf.storage-directory=" + storage,
+                        "logging.level.root=WARN",
+                        // the load test stands in for many clients from a single address
+                        "invoice.pdf.admission.client-rate=1000000",
+                        "invoice.pdf.admission.client-burst=1000000")
+                .run(options.getApplicationArgs().toArray(String[]::new));
+
+        ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "loadtest-client");
+            thread.setDaemon(true);
+            return thread;
+        });
+        int exitCode;
+        try {
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).executor(executor).build();
+            String base = "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort();
+
+            Random random = new Random(options.getSeed());
+            long[] productIds = seedProducts(client, base, options.getProducts(), random);
+            String[] invoices = LoadTestData.createInvoices(productIds, options.getInvoices(), options.getLines(), random);
+            LoadTestData data = new LoadTestData(productIds, invoices, renderPdfFiles(client, base, invoices, options.getPdfFiles()));
+
+            Map<String, Object> report = run(client, base, data, options, random);
+            Files.createDirectories(options.getReport().toAbsolutePath().getParent());
+            MAPPER.writeValue(options.getReport().toFile(), report);
+            printReport(report);
+            System.out.printf("Report written to %s%n", options.getReport().toAbsolutePath());
+
+            exitCode = options.getBaseline() == null ? 0 : compare(MAPPER.valueToTree(report), MAPPER.readTree(options.getBaseline().toFile()), options.getMaxRegression());
+        } finally {
+            context.close();
+            executor.shutdownNow();
+            FileSystemUtils.deleteRecursively(storage);
+        }
+        System.exit(exitCode);
+    }
+
+    /**
+     * Keeps the test configurations out of the component scan, as the load test
+     * runs with the test classes on the class path.
+     */
+    static class TestConfigurationExcludeFilter extends TypeExcludeFilter {
+        @Override
+        public boolean match(MetadataReader metadataReader, MetadataReaderFactory metadataReaderFactory) {
+            return metadataReader.getAnnotationMetadata().hasAnnotation(TestConfiguration.class.getName());
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj != null && obj.getClass() == getClass();
+        }
+
+        @Override
+        public int hashCode() {
+            return getClass().hashCode();
+        }
+    }
+
+    /**
+     * Imports the products through {@code /api/products/import}.
+     * @return The IDs of all products of the catalog
+     */
+    private static long[] seedProducts(HttpClient client, String base, int count, Random random) throws IOException, InterruptedException {
+        StringBuilder csv = new StringBuilder("name,amount\n");
+        for(int i = 1; i <= count; i++)
+            csv.append("Load Test Item ").append(i).append(',').append(1 + random.nextInt(1000)).append('\n');
+        send(client, HttpRequest.newBuilder(URI.create(base + "/api/products/import"))
+                .header("Content-Type", "text/csv")
+                .POST(HttpRequest.BodyPublishers.ofString(csv.toString()))
+                .build());
+
+        JsonNode products = send(client, HttpRequest.newBuilder(URI.create(base + "/api/products")).build());
+        long[] ids = new long[products.size()];
+        for(int i = 0; i < ids.length; i++)
+            ids[i] = products.get(i).get("id").asLong();
+        return ids;
+    }
+
+    /**
+     * Renders the first invoices as PDF files, for the access-pdf operation.
+     * @return The names of the files
+     */
+    private static List<String> renderPdfFiles(HttpClient client, String base, String[] invoices, int count) throws IOException, InterruptedException {
+        List<String> files = new ArrayList<>(count);
+        for(int i = 0; i < count; i++) {
+            JsonNode response = send(client, HttpRequest.newBuilder(URI.create(base + "/api/invoice/pdf?id=" + invoices[i % invoices.length])).build());
+            String url = response.get(ResponseConstants.REDIRECT_URL).asText();
+            files.add(url.substring(url.lastIndexOf('/') + 1));
+        }
+        return files;
+    }
+
+    private static JsonNode send(HttpClient client, HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        if(response.statusCode() != 200)
+            throw new IllegalStateException(String.format("Preparing the load test failed, %s answered %d: %s", request.uri(), response.statusCode(), response.body()));
+        return MAPPER.readTree(response.body());
+    }
+
+    /**
+     * Sends the requests at the fixed rate through the warm-up and the measurement, and waits for the last responses.
+     * @return The report
+     */
+    private static Map<String, Object> run(HttpClient client, String base, LoadTestData data, LoadTestOptions options, Random random) throws InterruptedException {
+        Operation[] operations = options.getMix().keySet().toArray(Operation[]::new);
+        int[] weights = new int[operations.length];
+        int totalWeight = 0;
+        for(int i = 0; i < operations.length; i++)
+            weights[i] = totalWeight += options.getMix().get(operations[i]);
+
+        OperationStats all = new OperationStats();
+        Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+        for(Operation operation : operations)
+            stats.put(operation, new OperationStats());
+
+        AtomicInteger inFlight = new AtomicInteger();
+        long start = System.nanoTime();
+        long measureStart = start + options.getWarmup().toNanos();
+        long end = measureStart + options.getDuration().toNanos();
+        long sent = 0;
+        for(long i = 0; ; i++) {
+            long scheduled = start + i * 1_000_000_000L / options.getRate();
+            if(scheduled >= end)
+                break;
+            long wait = scheduled - System.nanoTime();
+            if(wait > 0)
+                LockSupport.parkNanos(wait);
+
+            int pick = random.nextInt(totalWeight);
+            int index = 0;
+            while(weights[index] <= pick)
+                index++;
+            Operation operation = operations[index];
+            HttpRequest request = HttpRequest.newBuilder(URI.create(base + operation.path(data, random))).timeout(options.getTimeout()).build();
+
+            boolean measured = scheduled >= measureStart;
+            OperationStats operationStats = stats.get(operation);
+            if(inFlight.get() >= options.getMaxInFlight()) {
+                if(measured) {
+                    operationStats.recordDropped();
+                    all.recordDropped();
+                }
+                continue;
+            }
+            if(measured)
+                sent++;
+            inFlight.incrementAndGet();
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+                inFlight.decrementAndGet();
+                if(!measured)
+                    return;
+                long latency = System.nanoTime() - scheduled;
+                if(error != null) {
+                    operationStats.recordFailure(latency);
+                    all.recordFailure(latency);
+                } else {
+                    operationStats.recordResponse(latency, response.statusCode());
+                    all.recordResponse(latency, response.statusCode());
+                }
+            });
+        }
+
+        long deadline = System.nanoTime() + options.getTimeout().toNanos() + TimeUnit.SECONDS.toNanos(5);
+        while(inFlight.get() > 0 && System.nanoTime() < deadline)
+            Thread.sleep(10);
+
+        double seconds = options.getDuration().toNanos() / 1e9;
+        Map<String, Object> operationReports = new LinkedHashMap<>();
+        operationReports.put("all", all.toReport(seconds));
+        stats.forEach((operation, operationStats) -> operationReports.put(operation.getName(), operationStats.toReport(seconds)));
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("timestamp", Instant.now().toString());
+        report.put("java", Runtime.version().toString());
+        report.put("processors", Runtime.getRuntime().availableProcessors());
+        report.put("options", options.toReport());
+        report.put("sentRate", sent / seconds);
+        report.put("operations", operationReports);
+        return report;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void printReport(Map<String, Object> report) {
+        System.out.printf("%-12s %10s %12s %10s %10s %10s %10s %10s%n", "operation", "requests", "throughput", "errors", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        ((Map<String, Map<String, Object>>) report.get("operations")).forEach((name, operation) -> {
+            Map<String, Object> latency = (Map<String, Object>) operation.get("latencyMillis");
+            System.out.printf("%-12s %10d %12.1f %9.2f%% %10.2f %10.2f %10.2f %10.2f%n", name, operation.get("requests"), operation.get("throughput"),
+                    (double) operation.get("errorRate") * 100, latency.get("p50"), latency.get("p99"), latency.get("p999"), latency.get("max"));
+        });
+    }
+
+    /**
+     * Prints the p99 latency, throughput and error rate of every operation next to the baseline's.
+     * @param maxRegression Increase of a p99 latency in percent that fails the run, 0 never fails
+     * @return 1 if a p99 latency regressed beyond the maximum, 0 otherwise
+     */
+    private static int compare(JsonNode report, JsonNode baseline, double maxRegression) {
+        if(!report.get("options").equals(baseline.get("options")))
+            System.out.println("Warning: the baseline ran with different options, its numbers aren't comparable.");
+
+        List<String> regressions = new ArrayList<>();
+        System.out.printf("%-12s %22s %22s %22s%n", "vs baseline", "p99 ms", "throughput", "error rate");
+        for(Iterator<Map.Entry<String, JsonNode>> operations = report.get("operations").fields(); operations.hasNext(); ) {
+            Map.Entry<String, JsonNode> operation = operations.next();
+            JsonNode before = baseline.path("operations").path(operation.getKey());
+            if(before.isMissingNode())
+                continue;
+
+            double p99 = operation.getValue().path("latencyMillis").path("p99").asDouble();
+            double p99Before = before.path("latencyMillis").path("p99").asDouble();
+            double change = p99Before == 0 ? 0 : (p99 - p99Before) / p99Before * 100;
+            System.out.printf("%-12s %9.2f -> %9.2f %8.1f -> %8.1f %9.2f%% -> %6.2f%%   p99 %+.1f%%%n", operation.getKey(),
+                    p99Before, p99,
+                    before.path("throughput").asDouble(), operation.getValue().path("throughput").asDouble(),
+                    before.path("errorRate").asDouble() * 100, operation.getValue().path("errorRate").asDouble() * 100,
+                    change);
+            if(maxRegression > 0 && change > maxRegression)
+                regressions.add(String.format("The p99 latency of %s regressed by %.1f%%, more than %.1f%%.", operation.getKey(), change, maxRegression));
+        }
+        regressions.forEach(System.out::println);
+        return regressions.isEmpty() ? 0 : 1;
+    }
+}
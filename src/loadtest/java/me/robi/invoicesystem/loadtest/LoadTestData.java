@@ -0,0 +1,54 @@
+package me.robi.invoicesystem.loadtest;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * What the requests of a load test are made of: the IDs of the seeded products, the
+ * {@code id} parameters of the invoices and the names of the PDF files rendered before the test.
+ */
+public class LoadTestData {
+    private final long[] productIds;
+    private final String[] invoices;
+    private final List<String> pdfFiles;
+
+    public LoadTestData(long[] productIds, String[] invoices, List<String> pdfFiles) {
+        this.productIds = productIds;
+        this.invoices = invoices;
+        this.pdfFiles = pdfFiles;
+    }
+
+    public long randomProductId(Random random) {
+        return productIds[random.nextInt(productIds.length)];
+    }
+
+    public String randomInvoice(Random random) {
+        return invoices[random.nextInt(invoices.length)];
+    }
+
+    public String randomPdfFile(Random random) {
+        return pdfFiles.get(random.nextInt(pdfFiles.size()));
+    }
+
+    /**
+     * Builds the {@code id} parameters of the invoices out of random products.
+     * @param productIds IDs of the seeded products
+     * @param count Amount of distinct invoices
+     * @param lines Products of every invoice
+     * @param random Random picking the products
+     * @return The {@code id} parameters, comma separated IDs
+     */
+    public static String[] createInvoices(long[] productIds, int count, int lines, Random random) {
+        String[] invoices = new String[count];
+        for(int i = 0; i < count; i++) {
+            StringBuilder id = new StringBuilder();
+            for(int line = 0; line < lines; line++) {
+                if(line > 0)
+                    id.append(',');
+                id.append(productIds[random.nextInt(productIds.length)]);
+            }
+            invoices[i] = id.toString();
+        }
+        return invoices;
+    }
+}
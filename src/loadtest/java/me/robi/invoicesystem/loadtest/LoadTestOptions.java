@@ -0,0 +1,224 @@
+package me.robi.invoicesystem.loadtest;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Options of a load test, given as {@code --name=value} arguments. Arguments that aren't
+ * options of the load test are passed on to the application, like {@code --invoice.catalog.max-size=10}.
+ */
+public class LoadTestOptions {
+    /**
+     * Requests sent per second, whether or not the previous ones were answered.
+     */
+    private int rate = 200;
+    /**
+     * Duration of the measurement.
+     */
+    private Duration duration = Duration.ofSeconds(30);
+    /**
+     * Duration of the load before the measurement, not recorded.
+     */
+    private Duration warmup = Duration.ofSeconds(10);
+    /**
+     * Share of every operation in the requests, by weight.
+     */
+    private Map<Operation, Integer> mix = parseMix("products:40,raw:40,pdf:15,access-pdf:5");
+    /**
+     * Products seeded into the catalog.
+     */
+    private int products = 10_000;
+    /**
+     * Distinct invoices requested by the raw and pdf operations.
+     */
+    private int invoices = 1_000;
+    /**
+     * Products of every invoice.
+     */
+    private int lines = 10;
+    /**
+     * PDF files rendered before the test, requested by the access-pdf operation.
+     */
+    private int pdfFiles = 50;
+    /**
+     * Seed of the products, the invoices and the order of the requests.
+     */
+    private long seed = 0;
+    /**
+     * Time after which a request counts as failed.
+     */
+    private Duration timeout = Duration.ofSeconds(10);
+    /**
+     * Requests waiting for a response beyond which the next ones are dropped, and count as errors.
+     */
+    private int maxInFlight = 5_000;
+    /**
+     * File the JSON report is written to.
+     */
+    private Path report = Paths.get("target", "loadtest-report.json");
+    /**
+     * Report of an earlier run to compare with, or {@code null}.
+     */
+    private Path baseline;
+    /**
+     * Increase of a p99 latency over the baseline, in percent, that fails the run. 0 only compares.
+     */
+    private double maxRegression = 0;
+    /**
+     * Arguments passed on to the application.
+     */
+    private final List<String> applicationArgs = new ArrayList<>();
+
+    /**
+     * @param args The arguments
+     * @return The options
+     * @throws IllegalArgumentException If an option has an invalid value
+     */
+    public static LoadTestOptions parse(String[] args) {
+        LoadTestOptions options = new LoadTestOptions();
+        for(String arg : args) {
+            int separator = arg.indexOf('=');
+            if(!arg.startsWith("--") || separator < 0)
+                throw new IllegalArgumentException(String.format("Invalid argument %s, expected --name=value.", arg));
+            String value = arg.substring(separator + 1);
+            switch(arg.substring(2, separator)) {
+                case "rate" -> options.rate = positive("rate", Integer.parseInt(value));
+                case "duration" -> options.duration = DurationStyle.detectAndParse(value);
+                case "warmup" -> options.warmup = DurationStyle.detectAndParse(value);
+                case "mix" -> options.mix = parseMix(value);
+                case "products" -> options.products = positive("products", Integer.parseInt(value));
+                case "invoices" -> options.invoices = positive("invoices", Integer.parseInt(value));
+                case "lines" -> options.lines = positive("lines", Integer.parseInt(value));
+                case "pdf-files" -> options.pdfFiles = positive("pdf-files", Integer.parseInt(value));
+                case "seed" -> options.seed = Long.parseLong(value);
+                case "timeout" -> options.timeout = DurationStyle.detectAndParse(value);
+                case "max-in-flight" -> options.maxInFlight = positive("max-in-flight", Integer.parseInt(value));
+                case "report" -> options.report = Paths.get(value);
+                case "baseline" -> options.baseline = value.isEmpty() ? null : Paths.get(value);
+                case "max-regression" -> options.maxRegression = Double.parseDouble(value);
+                default -> options.applicationArgs.add(arg);
+            }
+        }
+        if(options.duration.isZero() || options.duration.isNegative())
+            throw new IllegalArgumentException("The duration has to be positive.");
+        return options;
+    }
+
+    /**
+     * @param value Comma separated {@code operation:weight} pairs, like {@code raw:3,pdf:1}
+     * @return The weights by operation
+     */
+    static Map<Operation, Integer> parseMix(String value) {
+        Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+        for(String entry : value.split(",")) {
+            String[] parts = entry.trim().split(":");
+            if(parts.length != 2)
+                throw new IllegalArgumentException(String.format("Invalid mix entry %s, expected operation:weight.", entry));
+            int weight = Integer.parseInt(parts[1].trim());
+            if(weight < 0)
+                throw new IllegalArgumentException(String.format("Invalid weight of %s, it can't be negative.", parts[0]));
+            if(weight > 0)
+                mix.merge(Operation.of(parts[0].trim()), weight, Integer::sum);
+        }
+        if(mix.isEmpty())
+            throw new IllegalArgumentException("The mix has no operation with a weight.");
+        return mix;
+    }
+
+    private static int positive(String name, int value) {
+        if(value < 1)
+            throw new IllegalArgumentException(String.format("The %s option has to be at least 1.", name));
+        return value;
+    }
+
+    public int getRate() {
+        return rate;
+    }
+
+    public Duration getDuration() {
+        return duration;
+    }
+
+    public Duration getWarmup() {
+        return warmup;
+    }
+
+    public Map<Operation, Integer> getMix() {
+        return mix;
+    }
+
+    public int getProducts() {
+        return products;
+    }
+
+    public int getInvoices() {
+        return invoices;
+    }
+
+    public int getLines() {
+        return lines;
+    }
+
+    public int getPdfFiles() {
+        return pdfFiles;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public Path getReport() {
+        return report;
+    }
+
+    public Path getBaseline() {
+        return baseline;
+    }
+
+    public double getMaxRegression() {
+        return maxRegression;
+    }
+
+    public List<String> getApplicationArgs() {
+        return applicationArgs;
+    }
+
+    /**
+     * @return The options shaping the load, so reports of different settings aren't mistaken for a regression.
+     */
+    public Map<String, Object> toReport() {
+        Map<String, Object> weights = new LinkedHashMap<>();
+        mix.forEach((operation, weight) -> weights.put(operation.getName(), weight));
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("rate", rate);
+        report.put("durationSeconds", duration.toMillis() / 1000.0);
+        report.put("warmupSeconds", warmup.toMillis() / 1000.0);
+        report.put("mix", weights);
+        report.put("products", products);
+        report.put("invoices", invoices);
+        report.put("lines", lines);
+        report.put("pdfFiles", pdfFiles);
+        report.put("seed", seed);
+        report.put("timeoutMillis", timeout.toMillis());
+        report.put("maxInFlight", maxInFlight);
+        report.put("applicationArgs", applicationArgs);
+        return report;
+    }
+}
@@ -0,0 +1,79 @@
+package me.robi.invoicesystem.loadtest;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A kind of request sent by the load test.
+ */
+public enum Operation {
+    /**
+     * A page of {@code /api/products}, after a random product.
+     */
+    PRODUCTS("products") {
+        @Override
+        public String path(LoadTestData data, Random random) {
+            return "/api/products?after=" + data.randomProductId(random) + "&limit=50";
+        }
+    },
+    /**
+     * One of the invoices as {@code /api/invoice/raw}.
+     */
+    RAW("raw") {
+        @Override
+        public String path(LoadTestData data, Random random) {
+            return "/api/invoice/raw?id=" + data.randomInvoice(random);
+        }
+    },
+    /**
+     * One of the invoices as {@code /api/invoice/pdf}, rendered on its first request.
+     */
+    PDF("pdf") {
+        @Override
+        public String path(LoadTestData data, Random random) {
+            return "/api/invoice/pdf?id=" + data.randomInvoice(random);
+        }
+    },
+    /**
+     * One of the PDF files rendered before the test, from {@code /api/access-pdf}.
+     */
+    ACCESS_PDF("access-pdf") {
+        @Override
+        public String path(LoadTestData data, Random random) {
+            return "/api/access-pdf/" + data.randomPdfFile(random);
+        }
+    };
+
+    private final String name;
+
+    Operation(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return Name of the operation in the mix and the report.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param data The seeded products, invoices and PDF files
+     * @param random Random picking the request
+     * @return Path and query of the next request of this operation.
+     */
+    public abstract String path(LoadTestData data, Random random);
+
+    /**
+     * @param name Name of the operation
+     * @return The operation
+     * @throws IllegalArgumentException If no operation has that name
+     */
+    public static Operation of(String name) {
+        for(Operation operation : values())
+            if(operation.name.equals(name))
+                return operation;
+        throw new IllegalArgumentException(String.format("Unknown operation %s, expected one of %s.", name,
+                List.of(values()).stream().map(Operation::getName).toList()));
+    }
+}
@@ -0,0 +1,94 @@
+package me.robi.invoicesystem.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and outcomes of the requests of an operation, or of all of them.
+ *
+ * Latencies are measured from the time a request was scheduled to be sent, not from when it
+ * actually was, so a stalled server shows up in the percentiles instead of lowering the load.
+ */
+public class OperationStats {
+    private static final long HIGHEST_LATENCY = TimeUnit.MINUTES.toNanos(5);
+
+    private final Histogram latencies = new ConcurrentHistogram(HIGHEST_LATENCY, 3);
+    private final Map<Integer, LongAdder> statusCodes = new TreeMap<>();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * Records a response.
+     * @param latencyNanos Time from the scheduled send to the response
+     * @param statusCode Status code of the response
+     */
+    public void recordResponse(long latencyNanos, int statusCode) {
+        latencies.recordValue(Math.min(latencyNanos, HIGHEST_LATENCY));
+        LongAdder count;
+        synchronized(statusCodes) {
+            count = statusCodes.computeIfAbsent(statusCode, code -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    /**
+     * Records a request that failed without a response, like a timeout or a refused connection.
+     * @param latencyNanos Time from the scheduled send to the failure
+     */
+    public void recordFailure(long latencyNanos) {
+        latencies.recordValue(Math.min(latencyNanos, HIGHEST_LATENCY));
+        failures.increment();
+    }
+
+    /**
+     * Records a request that wasn't sent, as too many were already waiting for a response.
+     */
+    public void recordDropped() {
+        dropped.increment();
+    }
+
+    /**
+     * @param seconds Duration of the measurement
+     * @return The counts, throughput, error rate and latency percentiles in milliseconds, for the report.
+     */
+    public Map<String, Object> toReport(double seconds) {
+        long requests = latencies.getTotalCount() + dropped.sum();
+        long errors = failures.sum() + dropped.sum();
+        Map<String, Long> codes = new LinkedHashMap<>();
+        synchronized(statusCodes) {
+            statusCodes.forEach((code, count) -> codes.put(String.valueOf(code), count.sum()));
+        }
+        for(Map.Entry<String, Long> code : codes.entrySet())
+            if(Integer.parseInt(code.getKey()) >= 400)
+                errors += code.getValue();
+
+        Map<String, Object> latency = new LinkedHashMap<>();
+        latency.put("p50", millis(latencies.getValueAtPercentile(50)));
+        latency.put("p90", millis(latencies.getValueAtPercentile(90)));
+        latency.put("p99", millis(latencies.getValueAtPercentile(99)));
+        latency.put("p999", millis(latencies.getValueAtPercentile(99.9)));
+        latency.put("max", millis(latencies.getMaxValue()));
+        latency.put("mean", millis(latencies.getMean()));
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("requests", requests);
+        report.put("errors", errors);
+        report.put("errorRate", requests == 0 ? 0 : (double) errors / requests);
+        report.put("throughput", (requests - errors) / seconds);
+        report.put("statusCodes", codes);
+        report.put("failures", failures.sum());
+        report.put("dropped", dropped.sum());
+        report.put("latencyMillis", latency);
+        return report;
+    }
+
+    private static double millis(double nanos) {
+        return Math.round(nanos / 1_000) / 1_000.0;
+    }
+}
@@ -0,0 +1,51 @@
+package me.robi.invoicesystem;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import me.robi.invoicesystem.controllers.invoice.types.BinaryInvoiceType;
+import me.robi.invoicesystem.controllers.invoice.types.CsvInvoiceType;
+import me.robi.invoicesystem.controllers.invoice.types.InvoiceType;
+import me.robi.invoicesystem.controllers.invoice.types.InvoiceTypeRegistry;
+import me.robi.invoicesystem.controllers.invoice.types.PdfInvoiceType;
+import me.robi.invoicesystem.controllers.invoice.types.PdfStreamInvoiceType;
+import me.robi.invoicesystem.controllers.invoice.types.RawInvoiceType;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+/**
+ * Declares the built-in invoice types as beans. The {@link PdfInvoiceType} is a bean of its
+ * own as it also serves the generated files, so there is only ever one instance of every type.
+ */
+@Configuration
+public class InvoiceTypeConfig {
+    @Bean
+    public RawInvoiceType rawInvoiceType(ObjectMapper objectMapper) {
+        return new RawInvoiceType(objectMapper);
+    }
+
+    @Bean
+    public BinaryInvoiceType cborInvoiceType() {
+        return BinaryInvoiceType.cbor();
+    }
+
+    @Bean
+    public BinaryInvoiceType smileInvoiceType() {
+        return BinaryInvoiceType.smile();
+    }
+
+    @Bean
+    public CsvInvoiceType csvInvoiceType() {
+        return new CsvInvoiceType();
+    }
+
+    @Bean
+    public PdfStreamInvoiceType pdfStreamInvoiceType(PdfInvoiceType pdfInvoiceType) {
+        return new PdfStreamInvoiceType(pdfInvoiceType);
+    }
+
+    @Bean
+    public InvoiceTypeRegistry invoiceTypeRegistry(List<InvoiceType> invoiceTypes) {
+        return new InvoiceTypeRegistry(invoiceTypes);
+    }
+}
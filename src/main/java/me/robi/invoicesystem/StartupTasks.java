@@ -0,0 +1,94 @@
+package me.robi.invoicesystem;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the tasks done at startup, like the seeding of the products and the invoice warm-up.
+ *
+ * By default a task runs right away, so before the application reports itself ready. With
+ * {@code invoice.startup.deferred=true} the tasks run one after another on a background thread
+ * instead, and a new instance serves requests as soon as its context is refreshed.
+ */
+@Component
+public class StartupTasks implements ApplicationListener<ApplicationReadyEvent> {
+    /**
+     * A task run at startup.
+     */
+    @FunctionalInterface
+    public interface Task {
+        void run() throws Exception;
+    }
+
+    /**
+     * Runs the tasks on a background thread, after the application is ready.
+     */
+    @Value("${invoice.startup.deferred:false}")
+    private boolean deferred;
+    /**
+     * Exits once the application is ready and the deferred tasks are done, for training runs.
+     */
+    @Value("${invoice.startup.exit-when-ready:false}")
+    private boolean exitWhenReady;
+
+    private ExecutorService executor;
+
+    /**
+     * Runs the task, right away or deferred.
+     * @param name Name of the task, for the failure of a deferred one
+     * @param task The task
+     * @throws Exception The failure of the task if it's run right away
+     */
+    public synchronized void run(String name, Task task) throws Exception {
+        if(!deferred) {
+            task.run();
+            return;
+        }
+
+        if(executor == null)
+            executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "startup-tasks");
+                thread.setDaemon(true);
+                return thread;
+            });
+        executor.execute(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                throw new IllegalStateException(String.format("Deferred startup task %s failed.", name), e);
+            }
+        });
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        if(!exitWhenReady)
+            return;
+
+        synchronized(this) {
+            if(executor != null) {
+                executor.shutdown();
+                try {
+                    executor.awaitTermination(5, TimeUnit.MINUTES);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        System.exit(SpringApplication.exit(event.getApplicationContext()));
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        if(executor != null)
+            executor.shutdownNow();
+    }
+}
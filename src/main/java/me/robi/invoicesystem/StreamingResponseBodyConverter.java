@@ -0,0 +1,41 @@
+package me.robi.invoicesystem;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+
+/**
+ * Writes a {@link StreamingResponseBody} returned inside a {@code ResponseEntity} whose declared
+ * body type is something else, as it's the case for invoice types. The body is written straight
+ * into the response on the request thread, without a content length so it's sent chunked.
+ */
+public class StreamingResponseBodyConverter extends AbstractHttpMessageConverter<StreamingResponseBody> {
+    public StreamingResponseBodyConverter() {
+        super(MediaType.ALL);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return StreamingResponseBody.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected StreamingResponseBody readInternal(Class<? extends StreamingResponseBody> clazz, HttpInputMessage inputMessage) throws HttpMessageNotReadableException {
+        throw new HttpMessageNotReadableException("StreamingResponseBody can't be read", inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(StreamingResponseBody body, HttpOutputMessage outputMessage) throws IOException {
+        body.writeTo(outputMessage.getBody());
+    }
+}
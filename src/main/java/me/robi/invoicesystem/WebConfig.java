@@ -1,9 +1,21 @@
 package me.robi.invoicesystem;
 
+import io.micrometer.observation.ObservationPredicate;
+import me.robi.invoicesystem.controllers.invoice.InvoiceTraceInterceptor;
+import me.robi.invoicesystem.controllers.invoice.InvoiceWarmup;
+import me.robi.invoicesystem.controllers.invoice.ProductQuantitiesArgumentResolver;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.server.observation.ServerRequestObservationContext;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import java.util.List;
+
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
     @Override
@@ -13,4 +25,32 @@ public class WebConfig implements WebMvcConfigurer {
                 .allowedMethods("*")
                 .allowedHeaders("*");
     }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new InvoiceTraceInterceptor())
+                .addPathPatterns("/api/invoice", "/api/invoice/*")
+                .excludePathPatterns("/api/invoice/bulk", "/api/invoice/summary");
+    }
+
+    /**
+     * Leaves the requests of the {@link InvoiceWarmup} out of the {@code http.server.requests} metrics.
+     */
+    @Bean
+    public ObservationPredicate warmUpObservationPredicate(ObjectProvider<InvoiceWarmup> invoiceWarmup) {
+        return (name, context) -> {
+            InvoiceWarmup warmup = invoiceWarmup.getIfAvailable();
+            return warmup == null || !(context instanceof ServerRequestObservationContext serverContext && warmup.isWarmUp(serverContext.getCarrier()));
+        };
+    }
+
+    @Override
+    public void addArgumentResolvers(List<HandlerMethodArgumentResolver> resolvers) {
+        resolvers.add(new ProductQuantitiesArgumentResolver());
+    }
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(0, new StreamingResponseBodyConverter());
+    }
 }
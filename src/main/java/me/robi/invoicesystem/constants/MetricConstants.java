@@ -0,0 +1,37 @@
+package me.robi.invoicesystem.constants;
+
+/**
+ * Names and tags of the metrics recorded across the invoice pipeline,
+ * exposed in Prometheus format at {@code /actuator/prometheus}.
+ */
+public class MetricConstants {
+    public static final String TAG_TYPE = "type";
+    public static final String TAG_OPERATION = "operation";
+    public static final String TAG_REASON = "reason";
+
+    public static final String INVOICE_REQUEST = "invoice.request";
+    public static final String INVOICE_LINES = "invoice.lines";
+    public static final String INVOICE_WARMUP = "invoice.warmup";
+
+    public static final String PRODUCT_LOOKUP = "invoice.product.lookup";
+    public static final String CATALOG_SIZE = "invoice.catalog.size";
+    public static final String CATALOG_HITS = "invoice.catalog.hits";
+    public static final String CATALOG_MISSES = "invoice.catalog.misses";
+
+    public static final String PDF_RENDER = "invoice.pdf.render";
+    public static final String PDF_WRITTEN = "invoice.pdf.written";
+    public static final String PDF_SERVED = "invoice.pdf.served";
+    public static final String PDF_CACHE_SIZE = "invoice.pdf.cache.size";
+    public static final String PDF_CACHE_HITS = "invoice.pdf.cache.hits";
+    public static final String PDF_CACHE_MISSES = "invoice.pdf.cache.misses";
+    public static final String PDF_CACHE_HIT_RATIO = "invoice.pdf.cache.hit.ratio";
+    public static final String PDF_STORAGE_BYTES = "invoice.pdf.storage.bytes";
+    public static final String PDF_STORAGE_EVICTIONS = "invoice.pdf.storage.evictions";
+    public static final String PDF_STORE_HITS = "invoice.pdf.store.hits";
+    public static final String PDF_STORE_ERRORS = "invoice.pdf.store.errors";
+    public static final String PDF_QUEUE_DEPTH = "invoice.pdf.queue.depth";
+    public static final String PDF_IN_FLIGHT = "invoice.pdf.queue.in.flight";
+    public static final String PDF_ADMISSION_ACTIVE = "invoice.pdf.admission.active";
+    public static final String PDF_ADMISSION_WAITING = "invoice.pdf.admission.waiting";
+    public static final String PDF_ADMISSION_REJECTED = "invoice.pdf.admission.rejected";
+}
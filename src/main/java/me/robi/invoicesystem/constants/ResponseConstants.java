@@ -8,8 +8,36 @@ public class ResponseConstants {
     public static final String RESPONSE_STATUS = "status";
     public static final String REDIRECT_URL = "redirectUrl";
 
+    public static class ProductResponseConstants {
+        public static final String PRODUCTS_LIST = "productsList";
+        public static final String NEXT_AFTER = "nextAfter";
+        public static final String VERSION = "version";
+        public static final String DELETED_IDS = "deletedIds";
+        public static final String FULL_SYNC = "fullSync";
+    }
+
+    public static class ImportResponseConstants {
+        public static final String IMPORTED_ROWS = "importedRows";
+        public static final String MILLIS = "millis";
+        public static final String ROWS_PER_SECOND = "rowsPerSecond";
+    }
+
     public static class InvoiceResponseConstants {
         public static final String PRODUCTS_LIST = "productsList";
         public static final String PRODUCTS_SUM = "amountSum";
+        public static final String LINE_COUNT = "lineCount";
+        public static final String QUANTITY = "quantity";
+        public static final String LINE_TOTAL = "lineTotal";
+    }
+
+    public static class PdfJobResponseConstants {
+        public static final String JOB_ID = "jobId";
+        public static final String JOB_STATUS = "jobStatus";
+        public static final String STATUS_URL = "statusUrl";
+        public static final String QUEUE_DEPTH = "queueDepth";
+        public static final String IN_FLIGHT = "inFlight";
+        public static final String COMPLETED = "completed";
+        public static final String FAILED = "failed";
+        public static final String AVERAGE_RENDER_MILLIS = "averageRenderMillis";
     }
 }
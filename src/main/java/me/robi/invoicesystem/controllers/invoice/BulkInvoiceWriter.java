@@ -0,0 +1,126 @@
+package me.robi.invoicesystem.controllers.invoice;
+
+import me.robi.invoicesystem.controllers.invoice.types.InvoiceLine;
+import me.robi.invoicesystem.controllers.invoice.types.PdfAdmissionControl;
+import me.robi.invoicesystem.controllers.invoice.types.PdfInvoiceType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Renders many PDF invoices in parallel and writes them into a ZIP file,
+ * each entry as soon as its invoice is rendered.
+ *
+ * At most {@link #window} rendered invoices are held in memory at once,
+ * a new invoice is only submitted after a finished one has been written.
+ *
+ * The bulk request takes a single token of the client in the {@link PdfAdmissionControl}, with its
+ * first invoice. The other invoices only wait for their turn among the renders, they're never rejected.
+ * If rendering or writing fails anyway, the ZIP file is left without its central directory, so the
+ * client can't mistake it for a complete one.
+ */
+public class BulkInvoiceWriter {
+    private final Executor executor;
+    private final PdfInvoiceType pdfInvoiceType;
+    private final int window;
+
+    /**
+     * A rendered invoice, waiting to be written into the ZIP file.
+     */
+    private record RenderedInvoice(int index, byte[] pdf) {
+    }
+
+    /**
+     * @param executor The pool rendering the invoices
+     * @param pdfInvoiceType The PDF Invoice Type whose layout is used
+     * @param window Maximum amount of invoices rendered or waiting to be written at once
+     */
+    public BulkInvoiceWriter(Executor executor, PdfInvoiceType pdfInvoiceType, int window) {
+        this.executor = executor;
+        this.pdfInvoiceType = pdfInvoiceType;
+        this.window = window;
+    }
+
+    /**
+     * Renders every invoice and writes them as {@code invoice-<index>.pdf} entries, in the order they finish.
+     * @param invoices List of the lines of every invoice
+     * @param sums Total sum of every invoice
+     * @param firstPermit Permit of the first invoice, acquired when the request was admitted, closed once it's rendered
+     * @param outputStream The OutputStream to write the ZIP file into
+     * @throws IOException If rendering or writing an invoice fails, the ZIP file is incomplete then
+     */
+    public void writeZip(List<List<InvoiceLine>> invoices, long[] sums, PdfAdmissionControl.Permit firstPermit, OutputStream outputStream) throws IOException {
+        CompletionService<RenderedInvoice> completionService = new ExecutorCompletionService<>(executor);
+        AtomicBoolean aborted = new AtomicBoolean();
+        int submitted = 0;
+        int pending = 0;
+
+        // only closed once every invoice is written, as closing it writes the central directory
+        ZipOutputStream zip = new ZipOutputStream(outputStream);
+        try {
+            // PDF content is already compressed, so the entries are only stored
+            zip.setMethod(ZipOutputStream.STORED);
+            while(submitted < invoices.size() || pending > 0) {
+                while(submitted < invoices.size() && pending < window) {
+                    int index = submitted++;
+                    // waits for its turn before it's submitted, so no thread of the pool waits for it
+                    PdfAdmissionControl.Permit permit = index == 0 ? firstPermit : pdfInvoiceType.getAdmissionControl().await();
+                    try {
+                        completionService.submit(() -> {
+                            try(permit) {
+                                return aborted.get() ? null : render(index, invoices.get(index), sums[index]);
+                            }
+                        });
+                    } catch (RejectedExecutionException e) {
+                        permit.close();
+                        throw e;
+                    }
+                    pending++;
+                }
+
+                RenderedInvoice invoice = completionService.take().get();
+                pending--;
+                writeEntry(zip, invoice);
+            }
+            zip.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } catch (RejectedExecutionException e) {
+            throw new IOException(e);
+        } finally {
+            // invoices that aren't rendered yet are skipped if writing failed, only releasing their permit
+            aborted.set(true);
+            firstPermit.close();
+        }
+    }
+
+    private RenderedInvoice render(int index, List<InvoiceLine> lines, long totalSum) throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        pdfInvoiceType.generatePdf(lines, totalSum, outputStream);
+        return new RenderedInvoice(index, outputStream.toByteArray());
+    }
+
+    private void writeEntry(ZipOutputStream zip, RenderedInvoice invoice) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(invoice.pdf());
+
+        ZipEntry entry = new ZipEntry(String.format("invoice-%d.pdf", invoice.index()));
+        entry.setSize(invoice.pdf().length);
+        entry.setCompressedSize(invoice.pdf().length);
+        entry.setCrc(crc.getValue());
+        zip.putNextEntry(entry);
+        zip.write(invoice.pdf());
+        zip.closeEntry();
+        zip.flush();
+    }
+}
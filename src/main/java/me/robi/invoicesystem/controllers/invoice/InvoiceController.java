@@ -1,19 +1,59 @@
 package me.robi.invoicesystem.controllers.invoice;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import me.robi.invoicesystem.controllers.invoice.types.BinaryInvoiceType;
+import me.robi.invoicesystem.controllers.invoice.types.InvoiceLine;
 import me.robi.invoicesystem.controllers.invoice.types.InvoiceType;
+import me.robi.invoicesystem.controllers.invoice.types.InvoiceTypeRegistry;
+import me.robi.invoicesystem.controllers.invoice.types.PdfAdmissionControl;
 import me.robi.invoicesystem.controllers.invoice.types.PdfInvoiceType;
-import me.robi.invoicesystem.controllers.invoice.types.RawInvoiceType;
 import me.robi.invoicesystem.entities.ProductEntity;
-import me.robi.invoicesystem.repositories.ProductRepository;
+import me.robi.invoicesystem.repositories.ProductCatalog;
+import me.robi.invoicesystem.repositories.ProductImporter;
+import me.robi.invoicesystem.repositories.ProductQuantities;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.MimeTypeUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
+import static me.robi.invoicesystem.constants.MetricConstants.*;
 import static me.robi.invoicesystem.constants.ResponseConstants.*;
+import static me.robi.invoicesystem.constants.ResponseConstants.ImportResponseConstants.*;
+import static me.robi.invoicesystem.constants.ResponseConstants.InvoiceResponseConstants.LINE_COUNT;
+import static me.robi.invoicesystem.constants.ResponseConstants.InvoiceResponseConstants.PRODUCTS_SUM;
+import static me.robi.invoicesystem.constants.ResponseConstants.ProductResponseConstants.DELETED_IDS;
+import static me.robi.invoicesystem.constants.ResponseConstants.ProductResponseConstants.FULL_SYNC;
+import static me.robi.invoicesystem.constants.ResponseConstants.ProductResponseConstants.NEXT_AFTER;
+import static me.robi.invoicesystem.constants.ResponseConstants.ProductResponseConstants.VERSION;
 
 /**
  * This class handles everything related to invoice
@@ -22,57 +62,470 @@ import static me.robi.invoicesystem.constants.ResponseConstants.*;
 @RestController
 @RequestMapping("/api")
 public class InvoiceController {
+    /**
+     * Page size of {@link #getProductRepository(WebRequest, Long, Integer)} if no limit is given.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    /**
+     * Largest page size allowed in {@link #getProductRepository(WebRequest, Long, Integer)}.
+     */
+    public static final int MAX_PAGE_SIZE = 1000;
+    public static final String SERVER_TIMING = "Server-Timing";
+    /**
+     * Type tag of {@link #getInvoiceSummary(ProductQuantities)} in the request metrics.
+     */
+    public static final String SUMMARY = "summary";
+    /**
+     * Request attribute of the admission permit of a bulk request's first invoice.
+     */
+    private static final String BULK_PERMIT = InvoiceController.class.getName() + ".bulkPermit";
+    /**
+     * Registry without any backing registry, the invoice metrics of the warm-up requests are dropped into it.
+     */
+    private static final MeterRegistry UNRECORDED = new CompositeMeterRegistry();
+
+    @Value("${invoice.bulk.threads:0}")
+    private int bulkThreads;
+    @Value("${invoice.bulk.max-invoices:10000}")
+    private int bulkMaxInvoices;
+    /**
+     * Whether invoice responses list their phases in a {@code Server-Timing} header, see {@link InvoiceTrace}.
+     * Streamed invoices have none, their headers are sent before they're rendered.
+     */
+    @Value("${invoice.tracing.server-timing:false}")
+    private boolean serverTiming;
+
     @Autowired
-    public ProductRepository productRepository;
+    public ProductCatalog productCatalog;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry = Metrics.globalRegistry;
 
     /**
-     * HashMap of all invoice types
-     * Key is the String identifier and the value is the response type object.
+     * Its requests aren't recorded in the invoice metrics, missing in tests of only the web layer.
      */
-    public static final HashMap<String, InvoiceType> INVOICE_TYPES = new HashMap<>();
+    @Autowired(required = false)
+    private InvoiceWarmup invoiceWarmup;
+
+    @Autowired
+    private PdfInvoiceType pdfInvoiceType;
+
+    @Autowired
+    private ProductImporter productImporter;
+
+    /**
+     * All invoice types by their identifier, every InvoiceType bean of the application context.
+     */
+    @Autowired
+    private InvoiceTypeRegistry invoiceTypeRegistry;
+
+    /**
+     * Invoice types chosen by the Accept header if no type is given, in order of preference.
+     */
+    private static final Map<MediaType, String> NEGOTIATED_TYPES = new LinkedHashMap<>();
+
     static {
-        INVOICE_TYPES.put(InvoiceType.RAW_INVOICE, new RawInvoiceType());
-        INVOICE_TYPES.put(InvoiceType.PDF_INVOICE, new PdfInvoiceType());
+        NEGOTIATED_TYPES.put(MediaType.APPLICATION_JSON, InvoiceType.RAW_INVOICE);
+        NEGOTIATED_TYPES.put(BinaryInvoiceType.APPLICATION_CBOR, InvoiceType.CBOR_INVOICE);
+        NEGOTIATED_TYPES.put(BinaryInvoiceType.APPLICATION_SMILE, InvoiceType.SMILE_INVOICE);
+        NEGOTIATED_TYPES.put(new MediaType("text", "csv"), InvoiceType.CSV_INVOICE);
+        NEGOTIATED_TYPES.put(MediaType.APPLICATION_PDF, InvoiceType.PDF_STREAM_INVOICE);
     }
 
     /**
-     * Lists all products that are available in the repository
-     * @return List of all products with all their fields.
+     * Pool rendering the invoices of {@link #createBulkInvoice(long[][])}, unless they're rendered
+     * on the {@link PdfInvoiceType#getRenderExecutor()} along with every other PDF file.
+     */
+    private ExecutorService bulkExecutor;
+    private BulkInvoiceWriter bulkInvoiceWriter;
+
+    @PostConstruct
+    public void createBulkExecutor() {
+        int threads = bulkThreads > 0 ? bulkThreads : Runtime.getRuntime().availableProcessors();
+        Executor renderExecutor = pdfInvoiceType.getRenderExecutor();
+        if(renderExecutor == null)
+            renderExecutor = bulkExecutor = new ForkJoinPool(threads);
+        bulkInvoiceWriter = new BulkInvoiceWriter(renderExecutor, pdfInvoiceType, threads * 2);
+    }
+
+    @PreDestroy
+    public void shutdownBulkExecutor() {
+        if(bulkExecutor != null)
+            bulkExecutor.shutdown();
+    }
+
+    /**
+     * Lists all products that are available in the repository.
+     * If {@param after} or {@param limit} is given, only a single page is returned.
+     * Responses carry the catalog version as their ETag, and are {@code 304} if nothing changed.
+     * @param webRequest The WebRequest provided by Spring
+     * @param after Only products with a higher ID than this are listed
+     * @param limit Maximum amount of products in the page, up to {@link #MAX_PAGE_SIZE}
+     * @return List of all products with all their fields, or a page of products with the cursor to the next page.
      */
     @GetMapping("/products")
-    public Iterable<ProductEntity> getProductRepository() {
-        return productRepository.findAll();
+    public ResponseEntity<Object> getProductRepository(WebRequest webRequest, @RequestParam(required = false) Long after, @RequestParam(required = false) Integer limit) {
+        long version = productCatalog.getVersion();
+        if(webRequest.checkNotModified(productsETag(version)))
+            return null;
+
+        if(after == null && limit == null)
+            return productsResponse(version).body(productCatalog.findAll());
+
+        if(limit == null)
+            limit = DEFAULT_PAGE_SIZE;
+        if(limit < 1 || limit > MAX_PAGE_SIZE)
+            return ResponseEntity.badRequest().body(Collections.singletonMap(RESPONSE_STATUS, String.format("Limit must be between 1 and %s.", MAX_PAGE_SIZE)));
+
+        List<ProductEntity> products = productCatalog.findPage(after == null ? Long.MIN_VALUE : after, limit);
+        Map<String, Object> responseBody = new HashMap<>();
+        responseBody.put(ProductResponseConstants.PRODUCTS_LIST, products);
+        responseBody.put(NEXT_AFTER, products.size() < limit ? null : products.get(products.size() - 1).getId());
+        return productsResponse(version).body(responseBody);
+    }
+
+    /**
+     * Lists the products that changed since the given catalog version, so polling clients
+     * only download what's new. If the version is too old to tell, every product is listed
+     * and {@code fullSync} is {@code true}, the client should then replace its whole list.
+     * @param webRequest The WebRequest provided by Spring
+     * @param since The {@code version} of the client's last sync
+     * @return The current version, the changed products and the IDs of deleted products.
+     */
+    @GetMapping(value = "/products", params = {"since", "stream!=true"})
+    public ResponseEntity<Object> getProductChanges(WebRequest webRequest, @RequestParam long since) {
+        long version = productCatalog.getVersion();
+        if(webRequest.checkNotModified(productsETag(version)))
+            return null;
+
+        Map<String, Object> responseBody = new HashMap<>();
+        responseBody.put(VERSION, version);
+        Set<Long> changedIds = productCatalog.getChangedIds(since);
+        if(changedIds == null) {
+            responseBody.put(FULL_SYNC, true);
+            responseBody.put(ProductResponseConstants.PRODUCTS_LIST, productCatalog.findAll());
+            responseBody.put(DELETED_IDS, Collections.emptyList());
+            return productsResponse(version).body(responseBody);
+        }
+
+        long[] ids = changedIds.stream().mapToLong(Long::longValue).toArray();
+        ProductEntity[] products = productCatalog.getProducts(ids);
+        List<ProductEntity> changedProducts = new ArrayList<>();
+        List<Long> deletedIds = new ArrayList<>();
+        for(int i = 0; i < ids.length; i++) {
+            if(products[i] != null)
+                changedProducts.add(products[i]);
+            else deletedIds.add(ids[i]);
+        }
+        responseBody.put(FULL_SYNC, false);
+        responseBody.put(ProductResponseConstants.PRODUCTS_LIST, changedProducts);
+        responseBody.put(DELETED_IDS, deletedIds);
+        return productsResponse(version).body(responseBody);
+    }
+
+    /**
+     * Streams all products as a JSON array, writing each product as it's read
+     * so memory usage doesn't depend on the size of the catalog.
+     * @param webRequest The WebRequest provided by Spring
+     * @param response The HttpServletResponse provided by Spring
+     * @throws IOException If writing to the response fails
+     */
+    @GetMapping(value = "/products", params = "stream=true")
+    public void streamProducts(WebRequest webRequest, HttpServletResponse response) throws IOException {
+        if(webRequest.checkNotModified(productsETag(productCatalog.getVersion())))
+            return;
+
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().getHeaderValue());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        try(JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            generator.writeStartArray();
+            productCatalog.forEach(product -> {
+                try {
+                    generator.writeObject(product);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            generator.writeEndArray();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Imports products from a CSV or newline delimited JSON upload, streamed from the
+     * request body without holding it in memory. See {@link ProductImporter} for the formats.
+     * @param request The HttpServletRequest provided by Spring
+     * @param contentType Format of the upload, {@code text/csv} or {@code application/x-ndjson}
+     * @return Amount of imported rows, how long it took and the rows imported per second.
+     * @throws IOException If reading the upload fails
+     */
+    @PostMapping(value = "/products/import", consumes = {"text/csv", MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<Map<String, Object>> importProducts(HttpServletRequest request, @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType) throws IOException {
+        ProductImporter.Result result;
+        try {
+            if(contentType.isCompatibleWith(MediaType.APPLICATION_NDJSON))
+                result = productImporter.importNdjson(request.getInputStream());
+            else result = productImporter.importCsv(request.getInputStream());
+        } catch (ProductImporter.ImportException e) {
+            Map<String, Object> responseBody = new HashMap<>();
+            responseBody.put(RESPONSE_STATUS, e.getMessage());
+            responseBody.put(IMPORTED_ROWS, e.getImportedRows());
+            return ResponseEntity.badRequest().body(responseBody);
+        }
+
+        Map<String, Object> responseBody = new HashMap<>();
+        responseBody.put(IMPORTED_ROWS, result.getRows());
+        responseBody.put(MILLIS, result.getMillis());
+        responseBody.put(ROWS_PER_SECOND, result.getRowsPerSecond());
+        return ResponseEntity.ok(responseBody);
+    }
+
+    /**
+     * @param version The catalog version the response is built from
+     * @return The ETag of the product listings at that version
+     */
+    private static String productsETag(long version) {
+        return "\"products-" + version + "\"";
+    }
+
+    /**
+     * @param version The catalog version the response is built from
+     * @return A response that clients have to revalidate with its ETag before reusing it
+     */
+    private static ResponseEntity.BodyBuilder productsResponse(long version) {
+        return ResponseEntity.ok()
+                .eTag(productsETag(version))
+                .cacheControl(CacheControl.noCache());
     }
 
     /**
      * Base method for filtering products based on an array of ID.
      * Alternatively also returns them as a JSON if accessed via a GET request.
+     * Repeated IDs are aggregated into a single line with their quantity, so every
+     * distinct product is looked up and rendered only once.
+     *
+     * Invoices returned as a {@link StreamingResponseBody} are rendered after this method returns,
+     * their request is timed until the body is written, see {@link #completeAfter(StreamingResponseBody, InvoiceTrace)}.
      * @param request The HttpServletRequest provided by Spring
-     * @param type Type of Response Type, from the list of {@link #INVOICE_TYPES}
-     * @param id An array of longs, containing the specified IDs of products.
-     * @return List of filtered products based on {@param id} and a response type of {@param type}.
+     * @param response The HttpServletResponse provided by Spring
+     * @param type Type of Response Type, from the {@link #invoiceTypeRegistry}. Chosen by the Accept header if it's missing
+     * @param id The IDs of the products, each with an optional {@code :quantity}, see {@link ProductQuantitiesArgumentResolver}.
+     * @return Lines of the products based on {@param id} and a response type of {@param type}.
      */
     @GetMapping({"/invoice", "/invoice/{type}"})
-    public ResponseEntity<Map<String, Object>> createInvoice(HttpServletRequest request, @PathVariable(required = false, value = "type") String type, @RequestParam long[] id) {
-        if(type == null)
-            type = InvoiceType.RAW_INVOICE;
+    public ResponseEntity<Map<String, Object>> createInvoice(HttpServletRequest request, HttpServletResponse response, @PathVariable(required = false, value = "type") String type, ProductQuantities id) {
+        if(type == null) {
+            type = negotiateType(request.getHeader(HttpHeaders.ACCEPT));
+            response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        }
 
-        InvoiceType invoiceType = INVOICE_TYPES.get(type);
+        InvoiceType invoiceType = invoiceTypeRegistry.get(type);
 
         if(invoiceType == null)
             return ResponseEntity.badRequest().body(Collections.singletonMap(RESPONSE_STATUS, String.format("Type %s does not exist.", type)));
 
-        List<ProductEntity> entities = new ArrayList<>();
-        int amountSum = 0;
+        InvoiceTrace trace = InvoiceTrace.of(request);
+        trace.setInvoice(type, id.size());
+        MeterRegistry meterRegistry = invoiceWarmup != null && invoiceWarmup.isWarmUp(request) ? UNRECORDED : this.meterRegistry;
+        meterRegistry.summary(INVOICE_LINES, TAG_TYPE, type).record(id.size());
+        Timer timer = meterRegistry.timer(INVOICE_REQUEST, TAG_TYPE, type);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        boolean streamed = false;
+        try {
+            ProductEntity[] products;
+            try(InvoiceTrace.Phase phase = trace.phase(InvoiceTrace.RESOLVE)) {
+                products = productCatalog.getProducts(id.getIds());
+            }
+
+            List<InvoiceLine> lines = new ArrayList<>(id.size());
+            Set<Long> missingIds = new LinkedHashSet<>();
+            long amountSum = 0;
+
+            try(InvoiceTrace.Phase phase = trace.phase(InvoiceTrace.SUM)) {
+                for(int i = 0; i < id.size(); i++) {
+                    ProductEntity product = products[i];
+                    if(product == null) {
+                        missingIds.add(id.getId(i));
+                        continue;
+                    }
+                    InvoiceLine line = new InvoiceLine(product, id.getQuantity(i));
+                    lines.add(line);
+                    amountSum = Math.addExact(amountSum, line.getLineTotal());
+                }
+            } catch (ArithmeticException e) {
+                return ResponseEntity.badRequest().body(Collections.singletonMap(RESPONSE_STATUS, "Amount sum is too large for an invoice."));
+            }
 
-        for(long l : id) {
-            ProductEntity product = productRepository.findById(l).orElse(null);
-            if(product == null)
-                return ResponseEntity.badRequest().body(Collections.singletonMap(RESPONSE_STATUS, String.format("Product of ID %s not found.", l)));
-            entities.add(product);
-            amountSum += product.getAmount();
+            if(!missingIds.isEmpty())
+                return missingProductsResponse(missingIds);
+
+            ResponseEntity invoice = invoiceType.getResponse(request, lines, amountSum);
+            if(invoice.getBody() instanceof StreamingResponseBody body) {
+                streamed = true;
+                trace.onComplete(() -> sample.stop(timer));
+                return new ResponseEntity(completeAfter(body, trace), invoice.getHeaders(), invoice.getStatusCode());
+            }
+            return invoice;
+        } finally {
+            if(!streamed) {
+                sample.stop(timer);
+                if(serverTiming)
+                    response.setHeader(SERVER_TIMING, trace.getServerTiming());
+            }
         }
+    }
+
+    /**
+     * Completes the trace as soon as the body is written. If the body is never written, like when the
+     * client is gone or the response fails before, the {@link InvoiceTraceInterceptor} completes it instead.
+     * @param body The streamed invoice
+     * @param trace The trace of the request
+     * @return The body, completing the trace once it's written
+     */
+    private static StreamingResponseBody completeAfter(StreamingResponseBody body, InvoiceTrace trace) {
+        return outputStream -> {
+            try {
+                body.writeTo(outputStream);
+            } finally {
+                trace.complete();
+            }
+        };
+    }
+
+    /**
+     * Counts the lines of an invoice and sums their amounts, without loading
+     * the products. Every line counts as often as its quantity.
+     * @param id The IDs of the products, each with an optional {@code :quantity}, see {@link ProductQuantitiesArgumentResolver}.
+     * @return The amount of lines and the sum of their amounts.
+     */
+    @GetMapping("/invoice/summary")
+    public ResponseEntity<Map<String, Object>> getInvoiceSummary(ProductQuantities id) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            ProductCatalog.Summary summary;
+            try {
+                summary = productCatalog.summarize(id);
+            } catch (ArithmeticException e) {
+                return ResponseEntity.badRequest().body(Collections.singletonMap(RESPONSE_STATUS, "Amount sum is too large for an invoice."));
+            }
+            if(!summary.getMissingIds().isEmpty())
+                return missingProductsResponse(summary.getMissingIds());
 
-        return invoiceType.getResponse(request, entities, amountSum);
+            Map<String, Object> responseBody = new HashMap<>();
+            responseBody.put(LINE_COUNT, summary.getLineCount());
+            responseBody.put(PRODUCTS_SUM, summary.getAmountSum());
+            return ResponseEntity.ok(responseBody);
+        } finally {
+            sample.stop(meterRegistry.timer(INVOICE_REQUEST, TAG_TYPE, SUMMARY));
+        }
+    }
+
+    /**
+     * Chooses the invoice type of the most preferred media type the client accepts.
+     * @param accept The Accept header, or {@code null}
+     * @return The invoice type, {@link InvoiceType#RAW_INVOICE} if no accepted media type has one
+     */
+    private String negotiateType(String accept) {
+        if(accept == null)
+            return InvoiceType.RAW_INVOICE;
+
+        List<MediaType> acceptedTypes;
+        try {
+            acceptedTypes = MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException e) {
+            return InvoiceType.RAW_INVOICE;
+        }
+        MimeTypeUtils.sortBySpecificity(acceptedTypes);
+        for(MediaType acceptedType : acceptedTypes)
+            for(Map.Entry<MediaType, String> negotiatedType : NEGOTIATED_TYPES.entrySet())
+                if(acceptedType.includes(negotiatedType.getKey()))
+                    return negotiatedType.getValue();
+        return InvoiceType.RAW_INVOICE;
+    }
+
+    /**
+     * Generates many PDF invoices at once, rendering them in parallel and streaming
+     * them back as a ZIP file, every invoice as an {@code invoice-<index>.pdf} entry.
+     * Repeated IDs of an invoice are aggregated into a line with their quantity,
+     * and the distinct products of all invoices are looked up together.
+     *
+     * The request is admitted like a single PDF file before the response is sent, taking one token
+     * of the client. Its invoices then wait for their turn among the renders, see {@link BulkInvoiceWriter}.
+     * @param request The HttpServletRequest provided by Spring
+     * @param ids An array of invoices, each an array of product IDs
+     * @return ZIP file of all invoices, an error if a product doesn't exist, or 503 if the rendering isn't admitted
+     */
+    @PostMapping("/invoice/bulk")
+    public ResponseEntity<Object> createBulkInvoice(HttpServletRequest request, @RequestBody long[][] ids) {
+        if(ids.length == 0 || ids.length > bulkMaxInvoices)
+            return ResponseEntity.badRequest().body(Collections.singletonMap(RESPONSE_STATUS, String.format("Amount of invoices must be between 1 and %s.", bulkMaxInvoices)));
+
+        ProductQuantities[] quantities = new ProductQuantities[ids.length];
+        ProductQuantities allIds = new ProductQuantities();
+        for(int i = 0; i < ids.length; i++) {
+            quantities[i] = ProductQuantities.of(ids[i]);
+            for(int j = 0; j < quantities[i].size(); j++)
+                allIds.add(quantities[i].getId(j), 1);
+        }
+
+        long[] distinctIds = allIds.getIds();
+        ProductEntity[] found = productCatalog.getProducts(distinctIds);
+        Map<Long, ProductEntity> products = new HashMap<>();
+        Set<Long> missingIds = new LinkedHashSet<>();
+        for(int i = 0; i < distinctIds.length; i++) {
+            if(found[i] == null)
+                missingIds.add(distinctIds[i]);
+            else products.put(distinctIds[i], found[i]);
+        }
+
+        if(!missingIds.isEmpty())
+            return missingProductsResponse(missingIds);
+
+        List<List<InvoiceLine>> invoices = new ArrayList<>(ids.length);
+        long[] sums = new long[ids.length];
+        try {
+            for(int i = 0; i < ids.length; i++) {
+                List<InvoiceLine> lines = new ArrayList<>(quantities[i].size());
+                for(int j = 0; j < quantities[i].size(); j++) {
+                    InvoiceLine line = new InvoiceLine(products.get(quantities[i].getId(j)), quantities[i].getQuantity(j));
+                    lines.add(line);
+                    sums[i] = Math.addExact(sums[i], line.getLineTotal());
+                }
+                invoices.add(lines);
+            }
+        } catch (ArithmeticException e) {
+            return ResponseEntity.badRequest().body(Collections.singletonMap(RESPONSE_STATUS, "Amount sum is too large for an invoice."));
+        }
+
+        PdfAdmissionControl.Permit firstPermit;
+        try {
+            firstPermit = pdfInvoiceType.getAdmissionControl().acquire(request.getRemoteAddr());
+        } catch (PdfAdmissionControl.AdmissionRejectedException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .body(Collections.singletonMap(RESPONSE_STATUS, e.getMessage()));
+        }
+        // released once the request completes, even if the body is never written
+        RequestContextHolder.currentRequestAttributes().registerDestructionCallback(BULK_PERMIT, firstPermit::close, RequestAttributes.SCOPE_REQUEST);
+
+        StreamingResponseBody body = outputStream -> bulkInvoiceWriter.writeZip(invoices, sums, firstPermit, outputStream);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename("invoices.zip").build().toString())
+                .body(body);
+    }
+
+    /**
+     * @param missingIds IDs of products that weren't found
+     * @return Bad request listing the missing product IDs
+     */
+    private ResponseEntity missingProductsResponse(Set<Long> missingIds) {
+        if(missingIds.size() == 1)
+            return ResponseEntity.badRequest().body(Collections.singletonMap(RESPONSE_STATUS, String.format("Product of ID %s not found.", missingIds.iterator().next())));
+        return ResponseEntity.badRequest().body(Collections.singletonMap(RESPONSE_STATUS, String.format("Products of ID %s not found.", missingIds.stream().map(String::valueOf).collect(Collectors.joining(", ")))));
     }
 }
@@ -0,0 +1,28 @@
+package me.robi.invoicesystem.controllers.invoice;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event of a single phase of an invoice request, see {@link InvoiceTrace}.
+ * Costs next to nothing unless a recording with the event enabled is running.
+ */
+@Name("me.robi.invoicesystem.InvoicePhase")
+@Label("Invoice Phase")
+@Category("Invoice System")
+@Description("A phase of generating an invoice")
+@StackTrace(false)
+class InvoicePhaseEvent extends Event {
+    @Label("Phase")
+    String phase;
+
+    @Label("Invoice Type")
+    String type;
+
+    @Label("Lines")
+    int lines;
+}
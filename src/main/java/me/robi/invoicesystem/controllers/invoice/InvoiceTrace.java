@@ -0,0 +1,146 @@
+package me.robi.invoicesystem.controllers.invoice;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Splits a single invoice request into phases. Every phase is recorded as an
+ * {@link InvoicePhaseEvent} for the Flight Recorder, and remembered to
+ * be listed in the {@code Server-Timing} header of the response.
+ *
+ * A trace belongs to the thread handling the request, and is attached to it as an attribute.
+ * Whatever has to happen once the response is written is registered with {@link #onComplete(Runnable)},
+ * and runs when the {@link InvoiceTraceInterceptor} sees the request complete, or earlier if {@link #complete()} is called.
+ */
+public class InvoiceTrace {
+    public static final String PARSE = "parse";
+    public static final String RESOLVE = "resolve";
+    public static final String SUM = "sum";
+    public static final String RENDER = "render";
+    public static final String WRITE = "write";
+    public static final String URL = "url";
+
+    private static final String ATTRIBUTE = InvoiceTrace.class.getName();
+
+    private final long start = System.nanoTime();
+    private final Map<String, Long> durations = new LinkedHashMap<>();
+    private String type;
+    private int lines;
+    private Phase parse;
+    private final List<Runnable> completions = new ArrayList<>();
+    private boolean completed;
+
+    /**
+     * Starts tracing a request, its {@link #PARSE} phase lasting until {@link #setInvoice} is called.
+     * @param request The request to attach the trace to
+     * @return The new trace
+     */
+    public static InvoiceTrace start(HttpServletRequest request) {
+        InvoiceTrace trace = new InvoiceTrace();
+        trace.parse = trace.phase(PARSE);
+        request.setAttribute(ATTRIBUTE, trace);
+        return trace;
+    }
+
+    /**
+     * @param request The traced request, or {@code null}
+     * @return The trace attached to the request, or a new detached one whose phases only produce events
+     */
+    public static InvoiceTrace of(HttpServletRequest request) {
+        Object trace = request != null ? request.getAttribute(ATTRIBUTE) : null;
+        return trace instanceof InvoiceTrace invoiceTrace ? invoiceTrace : new InvoiceTrace();
+    }
+
+    /**
+     * Sets the invoice every following phase belongs to, and ends the {@link #PARSE} phase.
+     * @param type Type of the invoice
+     * @param lines Amount of lines of the invoice
+     */
+    public void setInvoice(String type, int lines) {
+        this.type = type;
+        this.lines = lines;
+        if(parse != null) {
+            parse.close();
+            parse = null;
+        }
+    }
+
+    /**
+     * Starts a phase, which ends when it's closed.
+     * @param name Name of the phase
+     * @return The running phase
+     */
+    public Phase phase(String name) {
+        return new Phase(name);
+    }
+
+    /**
+     * Runs a task once the response is written, whether it succeeded or not.
+     * @param completion The task, run right away if the trace already completed
+     */
+    public void onComplete(Runnable completion) {
+        if(completed)
+            completion.run();
+        else completions.add(completion);
+    }
+
+    /**
+     * Runs the tasks registered with {@link #onComplete(Runnable)}, only the first call has an effect.
+     */
+    public void complete() {
+        if(completed)
+            return;
+        completed = true;
+        for(Runnable completion : completions)
+            completion.run();
+        completions.clear();
+    }
+
+    /**
+     * @return The finished phases and the total duration so far, as a {@code Server-Timing} header value.
+     * Phases of the same name are summed up.
+     */
+    public String getServerTiming() {
+        StringBuilder builder = new StringBuilder();
+        durations.forEach((name, nanos) -> appendMetric(builder, name, nanos));
+        appendMetric(builder, "total", System.nanoTime() - start);
+        return builder.toString();
+    }
+
+    private static void appendMetric(StringBuilder builder, String name, long nanos) {
+        if(!builder.isEmpty())
+            builder.append(", ");
+        builder.append(name).append(";dur=").append(String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0));
+    }
+
+    /**
+     * A running phase of the trace.
+     */
+    public class Phase implements AutoCloseable {
+        private final String name;
+        private final long start = System.nanoTime();
+        private final InvoicePhaseEvent event = new InvoicePhaseEvent();
+
+        private Phase(String name) {
+            this.name = name;
+            event.begin();
+        }
+
+        @Override
+        public void close() {
+            event.end();
+            if(event.shouldCommit()) {
+                event.phase = name;
+                event.type = type;
+                event.lines = lines;
+                event.commit();
+            }
+            durations.merge(name, System.nanoTime() - start, Long::sum);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package me.robi.invoicesystem.controllers.invoice;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/**
+ * Starts the {@link InvoiceTrace} of a request before its arguments are parsed,
+ * and completes it once the response is written.
+ */
+public class InvoiceTraceInterceptor implements HandlerInterceptor {
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        InvoiceTrace.start(request);
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        InvoiceTrace.of(request).complete();
+    }
+}
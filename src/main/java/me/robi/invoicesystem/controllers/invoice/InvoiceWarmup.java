@@ -0,0 +1,142 @@
+package me.robi.invoicesystem.controllers.invoice;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.http.HttpServletRequest;
+import me.robi.invoicesystem.StartupTasks;
+import me.robi.invoicesystem.controllers.invoice.types.InvoiceLine;
+import me.robi.invoicesystem.controllers.invoice.types.InvoiceType;
+import me.robi.invoicesystem.controllers.invoice.types.InvoiceTypeRegistry;
+import me.robi.invoicesystem.entities.ProductEntity;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static me.robi.invoicesystem.constants.MetricConstants.INVOICE_WARMUP;
+import static me.robi.invoicesystem.constants.MetricConstants.TAG_TYPE;
+
+/**
+ * Renders synthetic invoices through every {@link InvoiceType} at startup, so the first
+ * requests after a deploy don't pay for class loading, font initialization and JIT compilation.
+ * Nothing is sent or stored.
+ *
+ * The rest of the request path, the dispatch, the parsing of the IDs and the product lookup query,
+ * is warmed up by requesting an invoice of a product that doesn't exist from every type over the
+ * local port. These requests carry a {@link #WARMUP_HEADER} with a token only known to this process,
+ * and are left out of the request metrics, see {@link #isWarmUp(HttpServletRequest)}. They're rejected
+ * before any invoice is rendered, so they never take a PDF admission permit.
+ *
+ * Runs before the application reports itself ready on {@code /actuator/health/readiness}, or
+ * in the background once it is with {@code invoice.startup.deferred=true}. The invoice types are
+ * only looked up then, so they're still created lazily in that case.
+ */
+@Component
+public class InvoiceWarmup implements ApplicationRunner {
+    /**
+     * ID of the product requested by the warm-up requests, product IDs start at 1.
+     */
+    public static final long MISSING_PRODUCT_ID = -1;
+    /**
+     * Header marking the warm-up requests, holding the {@link #token}.
+     */
+    public static final String WARMUP_HEADER = "Invoice-Warmup";
+
+    /**
+     * Random per process, so a client can't pass its requests off as warm-up requests.
+     */
+    private final String token = UUID.randomUUID().toString();
+
+    @Autowired
+    private ObjectProvider<InvoiceTypeRegistry> invoiceTypeRegistry;
+
+    @Autowired
+    private StartupTasks startupTasks;
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry = Metrics.globalRegistry;
+
+    /**
+     * Invoices rendered through every type, 0 disables the warm-up.
+     */
+    @Value("${invoice.warmup.iterations:20}")
+    private int iterations;
+    /**
+     * Lines of every synthetic invoice.
+     */
+    @Value("${invoice.warmup.lines:100}")
+    private int lines;
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        if(iterations > 0)
+            startupTasks.run("invoice warm-up", this::warmUp);
+    }
+
+    /**
+     * @param request Any request
+     * @return Whether the request was sent by the warm-up, these aren't recorded in the request metrics
+     */
+    public boolean isWarmUp(HttpServletRequest request) {
+        return token.equals(request.getHeader(WARMUP_HEADER));
+    }
+
+    private void warmUp() throws IOException {
+        List<InvoiceLine> invoiceLines = new ArrayList<>(lines);
+        long totalSum = 0;
+        for(int i = 1; i <= lines; i++) {
+            InvoiceLine line = new InvoiceLine(new ProductEntity("Warm-up Item " + i, i % 100), i % 5 + 1);
+            invoiceLines.add(line);
+            totalSum += line.getLineTotal();
+        }
+
+        for(InvoiceType type : invoiceTypeRegistry.getObject().getTypes().values()) {
+            Timer.Sample sample = Timer.start(meterRegistry);
+            for(int i = 0; i < iterations; i++)
+                type.warmUp(invoiceLines, totalSum);
+            sample.stop(meterRegistry.timer(INVOICE_WARMUP, TAG_TYPE, type.getName()));
+        }
+        warmUpRequests();
+    }
+
+    /**
+     * Requests an invoice of the {@link #MISSING_PRODUCT_ID} from every type, if a web server is running.
+     */
+    private void warmUpRequests() throws IOException {
+        if(!(applicationContext instanceof WebServerApplicationContext webContext) || webContext.getWebServer() == null)
+            return;
+        int port = webContext.getWebServer().getPort();
+        if(port <= 0)
+            return;
+
+        HttpClient client = HttpClient.newHttpClient();
+        try {
+            for(String type : invoiceTypeRegistry.getObject().getTypes().keySet()) {
+                HttpRequest request = HttpRequest.newBuilder(URI.create(String.format("http://localhost:%d/api/invoice/%s?id=%d", port, type, MISSING_PRODUCT_ID)))
+                        .header(WARMUP_HEADER, token)
+                        .build();
+                for(int i = 0; i < iterations; i++)
+                    client.send(request, HttpResponse.BodyHandlers.discarding());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
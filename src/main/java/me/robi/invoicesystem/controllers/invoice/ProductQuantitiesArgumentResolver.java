@@ -0,0 +1,81 @@
+package me.robi.invoicesystem.controllers.invoice;
+
+import me.robi.invoicesystem.repositories.ProductQuantities;
+import org.springframework.core.MethodParameter;
+import org.springframework.web.bind.MissingServletRequestParameterException;
+import org.springframework.web.bind.ServletRequestBindingException;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+
+/**
+ * Resolves a {@link ProductQuantities} argument out of the request parameter of the same name.
+ *
+ * The parameter is a comma separated list of product IDs, and may be repeated. Every ID is counted
+ * once per occurrence, or given an explicit quantity with the {@code id:quantity} syntax, so
+ * {@code id=1,2,1} and {@code id=1:2,2} are the same invoice. The IDs are parsed straight
+ * into the quantities, without splitting the parameter or boxing a single ID.
+ */
+public class ProductQuantitiesArgumentResolver implements HandlerMethodArgumentResolver {
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        return parameter.getParameterType() == ProductQuantities.class;
+    }
+
+    @Override
+    public ProductQuantities resolveArgument(MethodParameter parameter, ModelAndViewContainer mavContainer, NativeWebRequest webRequest, WebDataBinderFactory binderFactory) throws ServletRequestBindingException {
+        String name = parameter.getParameterName();
+        String[] values = name == null ? null : webRequest.getParameterValues(name);
+        if(values == null)
+            throw new MissingServletRequestParameterException(String.valueOf(name), "long[]");
+
+        int length = 0;
+        for(String value : values)
+            length += value.length();
+        // every line takes at least two characters, including its separator
+        ProductQuantities quantities = new ProductQuantities(Math.min(length / 2 + 1, 1024));
+        for(String value : values)
+            parse(value, quantities);
+        return quantities;
+    }
+
+    /**
+     * Adds every line of a comma separated list to the quantities, skipping empty lines.
+     * @param value The list of lines, each an ID with an optional {@code :quantity}
+     * @param quantities The quantities to add to
+     * @throws ServletRequestBindingException If a line isn't a valid ID or quantity
+     */
+    public static void parse(String value, ProductQuantities quantities) throws ServletRequestBindingException {
+        int start = 0;
+        while(start <= value.length()) {
+            int end = value.indexOf(',', start);
+            if(end < 0)
+                end = value.length();
+            parseLine(value, start, end, quantities);
+            start = end + 1;
+        }
+    }
+
+    private static void parseLine(String value, int start, int end, ProductQuantities quantities) throws ServletRequestBindingException {
+        while(start < end && Character.isWhitespace(value.charAt(start)))
+            start++;
+        while(end > start && Character.isWhitespace(value.charAt(end - 1)))
+            end--;
+        if(start == end)
+            return;
+
+        int separator = start;
+        while(separator < end && value.charAt(separator) != ':')
+            separator++;
+        try {
+            long id = Long.parseLong(value, start, separator, 10);
+            int quantity = separator == end ? 1 : Integer.parseInt(value, separator + 1, end, 10);
+            quantities.add(id, quantity);
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new ServletRequestBindingException(String.format("Invalid invoice line %s, expected an ID with an optional :quantity.", value.substring(start, end)));
+        } catch (IllegalArgumentException e) {
+            throw new ServletRequestBindingException(e.getMessage());
+        }
+    }
+}
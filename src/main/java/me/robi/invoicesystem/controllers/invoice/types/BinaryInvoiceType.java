@@ -0,0 +1,73 @@
+package me.robi.invoicesystem.controllers.invoice.types;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import me.robi.invoicesystem.entities.ProductEntity;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import static me.robi.invoicesystem.constants.ResponseConstants.InvoiceResponseConstants.*;
+
+/**
+ * An Invoice Type that writes the same structure as the {@link RawInvoiceType}
+ * in a binary data format of Jackson, such as CBOR or Smile.
+ *
+ * Every product is written field by field, without going through reflection.
+ */
+public class BinaryInvoiceType extends StreamingInvoiceType {
+    public static final MediaType APPLICATION_CBOR = MediaType.valueOf("application/cbor");
+    public static final MediaType APPLICATION_SMILE = MediaType.valueOf("application/x-jackson-smile");
+
+    private final JsonFactory factory;
+
+    /**
+     * @param factory Creates the generators of the data format
+     * @param name Identifier of the type
+     * @param mediaType Content type of the data format
+     */
+    public BinaryInvoiceType(JsonFactory factory, String name, MediaType mediaType) {
+        super(name, mediaType);
+        this.factory = factory;
+    }
+
+    /**
+     * @return An Invoice Type writing CBOR
+     */
+    public static BinaryInvoiceType cbor() {
+        return new BinaryInvoiceType(new CBORFactory(), CBOR_INVOICE, APPLICATION_CBOR);
+    }
+
+    /**
+     * @return An Invoice Type writing Smile, which refers back to repeated field names instead of writing them again
+     */
+    public static BinaryInvoiceType smile() {
+        return new BinaryInvoiceType(new SmileFactory(), SMILE_INVOICE, APPLICATION_SMILE);
+    }
+
+    @Override
+    public void write(List<InvoiceLine> lines, long totalSum, OutputStream outputStream) throws IOException {
+        try(JsonGenerator generator = factory.createGenerator(outputStream)) {
+            generator.writeStartObject();
+            generator.writeFieldName(PRODUCTS_LIST);
+            generator.writeStartArray(lines, lines.size());
+            for(InvoiceLine line : lines) {
+                ProductEntity product = line.getProduct();
+                generator.writeStartObject();
+                generator.writeNumberField("id", product.getId());
+                generator.writeStringField("name", product.getName());
+                generator.writeNumberField("amount", product.getAmount());
+                generator.writeNumberField(QUANTITY, line.getQuantity());
+                generator.writeNumberField(LINE_TOTAL, line.getLineTotal());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeNumberField(PRODUCTS_SUM, totalSum);
+            generator.writeEndObject();
+        }
+    }
+}
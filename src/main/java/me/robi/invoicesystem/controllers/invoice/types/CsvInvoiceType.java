@@ -0,0 +1,80 @@
+package me.robi.invoicesystem.controllers.invoice.types;
+
+import jakarta.servlet.http.HttpServletRequest;
+import me.robi.invoicesystem.entities.ProductEntity;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * An Invoice Type that writes the products as CSV, a header line followed by
+ * a line of every product with its quantity and line total. The total sum is sent in the {@link #AMOUNT_SUM_HEADER} header.
+ */
+public class CsvInvoiceType extends StreamingInvoiceType {
+    public static final MediaType TEXT_CSV = new MediaType("text", "csv", StandardCharsets.UTF_8);
+    public static final String AMOUNT_SUM_HEADER = "Invoice-Amount-Sum";
+
+    /**
+     * Lines are encoded and written once this many characters are buffered.
+     */
+    private static final int CHUNK_SIZE = 8192;
+
+    public CsvInvoiceType() {
+        super(CSV_INVOICE, TEXT_CSV);
+    }
+
+    @Override
+    public ResponseEntity getResponse(HttpServletRequest request, List<InvoiceLine> lines, long totalSum) {
+        ResponseEntity response = super.getResponse(request, lines, totalSum);
+        return ResponseEntity.status(response.getStatusCode())
+                .headers(response.getHeaders())
+                .header(AMOUNT_SUM_HEADER, String.valueOf(totalSum))
+                .body(response.getBody());
+    }
+
+    @Override
+    public void write(List<InvoiceLine> lines, long totalSum, OutputStream outputStream) throws IOException {
+        StringBuilder builder = new StringBuilder(CHUNK_SIZE + 256);
+        builder.append("id,name,amount,quantity,lineTotal\r\n");
+        for(InvoiceLine line : lines) {
+            ProductEntity product = line.getProduct();
+            builder.append(product.getId()).append(',');
+            appendField(builder, product.getName());
+            builder.append(',').append(product.getAmount())
+                    .append(',').append(line.getQuantity())
+                    .append(',').append(line.getLineTotal()).append("\r\n");
+            if(builder.length() >= CHUNK_SIZE) {
+                outputStream.write(builder.toString().getBytes(StandardCharsets.UTF_8));
+                builder.setLength(0);
+            }
+        }
+        outputStream.write(builder.toString().getBytes(StandardCharsets.UTF_8));
+        outputStream.flush();
+    }
+
+    /**
+     * Appends a field, quoting it if it contains a separator, a quote or a line break.
+     */
+    private static void appendField(StringBuilder builder, String value) {
+        if(value == null)
+            return;
+        if(!needsQuotes(value)) {
+            builder.append(value);
+            return;
+        }
+        builder.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+
+    private static boolean needsQuotes(String value) {
+        for(int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if(c == ',' || c == '"' || c == '\r' || c == '\n')
+                return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,38 @@
+package me.robi.invoicesystem.controllers.invoice.types;
+
+import me.robi.invoicesystem.entities.ProductEntity;
+
+/**
+ * A line of an invoice, a product and how many times it's billed.
+ */
+public class InvoiceLine {
+    private final ProductEntity product;
+    private final long quantity;
+    private final long lineTotal;
+
+    /**
+     * @param product The billed product
+     * @param quantity How many times the product is billed
+     * @throws ArithmeticException If the line total doesn't fit into a long
+     */
+    public InvoiceLine(ProductEntity product, long quantity) {
+        this.product = product;
+        this.quantity = quantity;
+        this.lineTotal = Math.multiplyExact(product.getAmount(), quantity);
+    }
+
+    public ProductEntity getProduct() {
+        return product;
+    }
+
+    public long getQuantity() {
+        return quantity;
+    }
+
+    /**
+     * @return The amount of the product times its quantity.
+     */
+    public long getLineTotal() {
+        return lineTotal;
+    }
+}
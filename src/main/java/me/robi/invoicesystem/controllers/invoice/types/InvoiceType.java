@@ -1,24 +1,45 @@
 package me.robi.invoicesystem.controllers.invoice.types;
 
 import jakarta.servlet.http.HttpServletRequest;
-import me.robi.invoicesystem.entities.ProductEntity;
 import org.springframework.http.ResponseEntity;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
  * An interface for handling different types of responses
+ *
+ * Every Spring bean implementing it is served under its {@link #getName()}, see {@link InvoiceTypeRegistry}.
  */
 public interface InvoiceType {
     String RAW_INVOICE = "raw";
     String PDF_INVOICE = "pdf";
+    String PDF_STREAM_INVOICE = "pdf-stream";
+    String CBOR_INVOICE = "cbor";
+    String SMILE_INVOICE = "smile";
+    String CSV_INVOICE = "csv";
 
     /**
      * Handles response based on given type
      * @param request HttpServletRequest provided by Spring
-     * @param entities List of all entities
-     * @param totalSum Total sum of the entities amount
+     * @param lines Lines of the invoice, one per distinct product
+     * @param totalSum Total sum of the line totals
      * @return Response in the given type
      */
-    ResponseEntity getResponse(HttpServletRequest request, List<ProductEntity> entities, int totalSum);
+    ResponseEntity getResponse(HttpServletRequest request, List<InvoiceLine> lines, long totalSum);
+
+    /**
+     * @return The identifier of the type, the {@code {type}} of {@code /api/invoice/{type}}
+     */
+    String getName();
+
+    /**
+     * Renders an invoice without sending or storing it anywhere, so the classes and code
+     * paths of the type are loaded and compiled before the first request needs them.
+     * @param lines Lines of a synthetic invoice
+     * @param totalSum Total sum of the line totals
+     * @throws IOException If rendering fails
+     */
+    default void warmUp(List<InvoiceLine> lines, long totalSum) throws IOException {
+    }
 }
@@ -0,0 +1,46 @@
+package me.robi.invoicesystem.controllers.invoice.types;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A read-only registry of the {@link InvoiceType}s, by their {@link InvoiceType#getName()}.
+ *
+ * Filled once with every InvoiceType bean of the application context, so a new
+ * type only needs to be declared as a bean to be served.
+ */
+public class InvoiceTypeRegistry {
+    private final Map<String, InvoiceType> types;
+
+    /**
+     * @param types All invoice types
+     * @throws IllegalStateException If two types have the same name
+     */
+    public InvoiceTypeRegistry(Collection<? extends InvoiceType> types) {
+        Map<String, InvoiceType> byName = new LinkedHashMap<>();
+        for(InvoiceType type : types) {
+            InvoiceType existing = byName.putIfAbsent(type.getName(), type);
+            if(existing != null)
+                throw new IllegalStateException(String.format("Invoice types %s and %s are both named %s.",
+                        existing.getClass().getName(), type.getClass().getName(), type.getName()));
+        }
+        this.types = Collections.unmodifiableMap(byName);
+    }
+
+    /**
+     * @param name Name of the type
+     * @return The type, or {@code null} if none has that name
+     */
+    public InvoiceType get(String name) {
+        return name == null ? null : types.get(name);
+    }
+
+    /**
+     * @return All types by their name, unmodifiable.
+     */
+    public Map<String, InvoiceType> getTypes() {
+        return types;
+    }
+}
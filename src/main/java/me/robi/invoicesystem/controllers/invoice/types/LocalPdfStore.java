@@ -0,0 +1,24 @@
+package me.robi.invoicesystem.controllers.invoice.types;
+
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+/**
+ * Keeps the generated files in the local {@link PdfStorage} of the node only,
+ * the store of a single node.
+ */
+public class LocalPdfStore implements PdfStore {
+    @Override
+    public boolean contains(String fileName) {
+        return false;
+    }
+
+    @Override
+    public void fetch(String fileName, Path target) throws NoSuchFileException {
+        throw new NoSuchFileException(fileName);
+    }
+
+    @Override
+    public void put(String fileName, Path file) {
+    }
+}
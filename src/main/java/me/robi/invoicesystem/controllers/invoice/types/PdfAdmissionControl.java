@@ -0,0 +1,240 @@
+package me.robi.invoicesystem.controllers.invoice.types;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides which requests may render a PDF file, so that clients asking for many
+ * unique invoices can't saturate the rendering for everyone else.
+ *
+ * Every client has a token bucket, each render takes a token. Renders are also limited
+ * to a global amount at a time, further renders wait up to a short time for their turn,
+ * and are rejected right away once too many are waiting already.
+ */
+public class PdfAdmissionControl {
+    /**
+     * Client buckets are cleaned up once there are more than this many.
+     */
+    public static final int MAX_TRACKED_CLIENTS = 10000;
+
+    /**
+     * Thrown when a render is not admitted.
+     */
+    public static class AdmissionRejectedException extends RejectedExecutionException {
+        private final long retryAfterSeconds;
+
+        public AdmissionRejectedException(String message, long retryAfterSeconds) {
+            super(message);
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        /**
+         * @return Seconds after which the client may try again
+         */
+        public long getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+    }
+
+    /**
+     * A render that has been admitted, closing it lets the next one through.
+     */
+    public class Permit implements AutoCloseable {
+        private final long start = System.nanoTime();
+        private boolean closed;
+
+        private Permit() {}
+
+        @Override
+        public synchronized void close() {
+            if(closed)
+                return;
+            closed = true;
+            renderNanos.add(System.nanoTime() - start);
+            renders.increment();
+            permits.release();
+        }
+    }
+
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final long maxWaitNanos;
+    private final double clientRate;
+    private final int clientBurst;
+
+    private final Semaphore permits;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final LongAdder renderNanos = new LongAdder();
+    private final LongAdder renders = new LongAdder();
+    private final LongAdder clientRejections = new LongAdder();
+    private final LongAdder saturationRejections = new LongAdder();
+
+    /**
+     * @param maxConcurrent Maximum amount of renders at a time
+     * @param maxQueued Maximum amount of renders waiting for their turn, further ones are rejected
+     * @param maxWait How long a render waits for its turn before it's rejected
+     * @param clientRate Renders a single client may start per second
+     * @param clientBurst Renders a single client may start at once after being idle
+     */
+    public PdfAdmissionControl(int maxConcurrent, int maxQueued, Duration maxWait, double clientRate, int clientBurst) {
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.clientRate = clientRate;
+        this.clientBurst = clientBurst;
+        this.permits = new Semaphore(maxConcurrent, true);
+    }
+
+    /**
+     * Takes a token from the client's bucket.
+     * @param client Identifier of the client, its address
+     * @throws AdmissionRejectedException If the client has no tokens left
+     */
+    public void checkClient(String client) {
+        if(buckets.size() > MAX_TRACKED_CLIENTS)
+            buckets.values().removeIf(TokenBucket::isFull);
+
+        TokenBucket bucket = buckets.computeIfAbsent(client, key -> new TokenBucket());
+        long waitNanos = bucket.tryTake();
+        if(waitNanos > 0) {
+            clientRejections.increment();
+            throw new AdmissionRejectedException("Too many PDF files requested, try again later.", toRetryAfterSeconds(waitNanos));
+        }
+    }
+
+    /**
+     * Rejects the render if the given amount of renders are already waiting.
+     * @param queued Amount of renders already waiting for their turn
+     * @throws AdmissionRejectedException If the queue has passed {@code maxQueued}
+     */
+    public void checkQueue(int queued) {
+        if(queued >= maxQueued) {
+            saturationRejections.increment();
+            throw new AdmissionRejectedException("Too many PDF files are being generated, try again later.", estimateRetryAfterSeconds(queued));
+        }
+    }
+
+    /**
+     * Takes a token from the client's bucket, and waits for the render's turn.
+     * @param client Identifier of the client, its address
+     * @return The permit to render, to be closed once the render is done
+     * @throws AdmissionRejectedException If the client has no tokens left, or the rendering is saturated
+     */
+    public Permit acquire(String client) {
+        checkClient(client);
+
+        if(permits.tryAcquire())
+            return new Permit();
+
+        int queued = waiting.getAndIncrement();
+        try {
+            checkQueue(queued);
+            if(permits.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS))
+                return new Permit();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            waiting.decrementAndGet();
+        }
+        saturationRejections.increment();
+        throw new AdmissionRejectedException("Too many PDF files are being generated, try again later.", estimateRetryAfterSeconds(queued));
+    }
+
+    /**
+     * Waits for the turn of a render as long as it takes, without taking a token from any client's bucket.
+     * For the renders of a request that was already admitted by {@link #acquire(String)}, like the further
+     * invoices of a bulk request, which can't be rejected anymore once their response has started.
+     * @return The permit to render, to be closed once the render is done
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public Permit await() throws InterruptedException {
+        if(permits.tryAcquire())
+            return new Permit();
+
+        waiting.incrementAndGet();
+        try {
+            permits.acquire();
+            return new Permit();
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return Amount of renders currently running.
+     */
+    public int getActive() {
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    /**
+     * @return Amount of renders waiting for their turn.
+     */
+    public int getWaiting() {
+        return waiting.get();
+    }
+
+    /**
+     * @return Amount of renders rejected because their client had no tokens left.
+     */
+    public long getClientRejectionCount() {
+        return clientRejections.sum();
+    }
+
+    /**
+     * @return Amount of renders rejected because too many were running or waiting.
+     */
+    public long getSaturationRejectionCount() {
+        return saturationRejections.sum();
+    }
+
+    /**
+     * Estimates how long it takes until the waiting renders are done, from the average render time.
+     */
+    private long estimateRetryAfterSeconds(int queued) {
+        long count = renders.sum();
+        if(count == 0)
+            return 1;
+        double averageNanos = (double) renderNanos.sum() / count;
+        return toRetryAfterSeconds((long) (averageNanos * (queued + 1) / maxConcurrent));
+    }
+
+    private static long toRetryAfterSeconds(long nanos) {
+        return Math.max(1, (long) Math.ceil(nanos / 1_000_000_000.0));
+    }
+
+    private class TokenBucket {
+        private double tokens = clientBurst;
+        private long refilled = System.nanoTime();
+
+        /**
+         * @return 0 if a token was taken, otherwise nanoseconds until the next token is available
+         */
+        synchronized long tryTake() {
+            refill();
+            if(tokens >= 1) {
+                tokens--;
+                return 0;
+            }
+            return (long) ((1 - tokens) / clientRate * 1_000_000_000L);
+        }
+
+        synchronized boolean isFull() {
+            refill();
+            return tokens >= clientBurst;
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            tokens = Math.min(clientBurst, tokens + (now - refilled) / 1_000_000_000.0 * clientRate);
+            refilled = now;
+        }
+    }
+}
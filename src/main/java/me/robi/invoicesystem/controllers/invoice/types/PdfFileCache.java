@@ -0,0 +1,319 @@
+package me.robi.invoicesystem.controllers.invoice.types;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread-safe cache of the generated files of a {@link PdfStorage},
+ * generating the files that don't exist yet.
+ *
+ * Concurrent requests for the same file are coalesced, only the first one
+ * generates the file while the others wait for it to finish. A file missing from
+ * the storage is fetched from the {@link PdfStore} if another node already generated it,
+ * and published to it once generated otherwise.
+ *
+ * A file is claimed in the store before it's generated. If another node holds the claim, the store
+ * is polled for the file for up to the claim wait, and the file is only generated after that.
+ * Files the store doesn't have are remembered briefly, so repeated {@link #find(String)} calls of
+ * unknown files don't ask the store every time.
+ */
+public class PdfFileCache {
+    /**
+     * How long a file is generated by another node at most, before it's generated here as well.
+     */
+    public static final Duration DEFAULT_CLAIM_WAIT = Duration.ofSeconds(5);
+    /**
+     * How often the store is polled while another node generates a file.
+     */
+    public static final long CLAIM_POLL_MILLIS = 50;
+    /**
+     * How long {@link #find(String)} remembers that the store doesn't have a file.
+     */
+    public static final long MISSING_FILE_TTL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    /**
+     * The remembered missing files are forgotten once there are more than this many.
+     */
+    public static final int MAX_MISSING_FILES = 10000;
+
+    private final PdfStorage storage;
+    private final PdfStore store;
+    private final long claimWaitNanos;
+
+    private final Map<String, CompletableFuture<Path>> generating = new ConcurrentHashMap<>();
+    /**
+     * Files the store didn't have, with the time they're asked for again.
+     */
+    private final Map<String, Long> missingFiles = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder storeHits = new LongAdder();
+    private final LongAdder storeErrors = new LongAdder();
+
+    /**
+     * @param storage The storage the files are kept in
+     * @param store The store the files are shared with the other nodes through
+     * @param claimWait How long a file claimed by another node is waited for, before it's generated here as well
+     */
+    public PdfFileCache(PdfStorage storage, PdfStore store, Duration claimWait) {
+        this.storage = storage;
+        this.store = store;
+        this.claimWaitNanos = claimWait.toNanos();
+    }
+
+    /**
+     * @param storage The storage the files are kept in
+     * @param store The store the files are shared with the other nodes through
+     */
+    public PdfFileCache(PdfStorage storage, PdfStore store) {
+        this(storage, store, DEFAULT_CLAIM_WAIT);
+    }
+
+    /**
+     * @param storage The storage the files are kept in
+     */
+    public PdfFileCache(PdfStorage storage) {
+        this(storage, new LocalPdfStore());
+    }
+
+    /**
+     * @param directory The directory the files are stored in
+     * @param maxSize Maximum amount of files that are kept
+     * @param maxAge Files older than this are generated again
+     */
+    public PdfFileCache(Path directory, int maxSize, Duration maxAge) {
+        this(new PdfStorage(directory, Long.MAX_VALUE, maxSize, maxAge));
+    }
+
+    /**
+     * Indexes the files that already exist in the storage, see {@link PdfStorage#rebuild()}.
+     * @throws IOException If the directory can't be read
+     */
+    public void rebuild() throws IOException {
+        storage.rebuild();
+    }
+
+    /**
+     * Returns the file with the given name, generating it first if
+     * it doesn't exist yet or is too old.
+     * @param fileName Name of the file inside the storage
+     * @param generator Generates the file if needed
+     * @return Path to the file
+     * @throws IOException If generating the file fails
+     */
+    public Path get(String fileName, PdfStorage.FileGenerator generator) throws IOException {
+        Path file = storage.find(fileName);
+        if(file != null) {
+            hits.increment();
+            return file;
+        }
+
+        CompletableFuture<Path> created = new CompletableFuture<>();
+        CompletableFuture<Path> existing = generating.putIfAbsent(fileName, created);
+        if(existing == null) {
+            generate(fileName, created, generator);
+            existing = created;
+        } else hits.increment();
+
+        try {
+            return existing.join();
+        } catch (CompletionException e) {
+            if(e.getCause() instanceof IOException ioException)
+                throw ioException;
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the file with the given name if it has already been generated, without blocking.
+     * Only {@link #get(String, PdfStorage.FileGenerator)} counts as a hit or miss, so downloads
+     * and status polls don't skew the hit ratio.
+     * @param fileName Name of the file inside the storage
+     * @return Path to the file, or {@code null} if it's not generated yet, still generating, or too old
+     */
+    public Path getIfPresent(String fileName) {
+        return storage.find(fileName);
+    }
+
+    /**
+     * Returns the file with the given name if it has already been generated, by this node
+     * or another one, without generating it. Like {@link #getIfPresent(String)}, it's not counted as a hit.
+     * @param fileName Name of the file inside the storage
+     * @return Path to the file, or {@code null} if it's not generated yet, still generating, or too old
+     */
+    public Path find(String fileName) {
+        Path file = getIfPresent(fileName);
+        if(file != null)
+            return file;
+
+        Long retry = missingFiles.get(fileName);
+        if(retry != null && System.nanoTime() - retry < 0)
+            return null;
+        file = fetchOrNull(fileName);
+        if(file == null) {
+            if(missingFiles.size() >= MAX_MISSING_FILES)
+                missingFiles.clear();
+            missingFiles.put(fileName, System.nanoTime() + MISSING_FILE_TTL_NANOS);
+        } else missingFiles.remove(fileName);
+        return file;
+    }
+
+    /**
+     * @return Amount of files currently in the storage.
+     */
+    public int size() {
+        return storage.size();
+    }
+
+    /**
+     * @return Amount of {@link #get(String, PdfStorage.FileGenerator)} calls served by an already existing or in-progress file.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return Amount of {@link #get(String, PdfStorage.FileGenerator)} calls that had to generate a file.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return Amount of files copied from the store into the storage.
+     */
+    public long getStoreHitCount() {
+        return storeHits.sum();
+    }
+
+    /**
+     * @return Amount of failed requests to the store.
+     */
+    public long getStoreErrorCount() {
+        return storeErrors.sum();
+    }
+
+    /**
+     * @return The storage the files are kept in.
+     */
+    public PdfStorage getStorage() {
+        return storage;
+    }
+
+    private void generate(String fileName, CompletableFuture<Path> future, PdfStorage.FileGenerator generator) {
+        try {
+            // another request may have finished generating it in the meantime
+            Path file = storage.find(fileName);
+            if(file != null)
+                hits.increment();
+            else if((file = fetchOrNull(fileName)) == null)
+                file = generateClaimed(fileName, generator);
+            future.complete(file);
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+        } finally {
+            generating.remove(fileName, future);
+        }
+    }
+
+    /**
+     * Generates and publishes a file once it's claimed in the store. While another node holds
+     * the claim, the file is fetched as soon as that node publishes it.
+     */
+    private Path generateClaimed(String fileName, PdfStorage.FileGenerator generator) throws IOException {
+        long deadline = System.nanoTime() + claimWaitNanos;
+        boolean claimed;
+        while(!(claimed = claim(fileName)) && System.nanoTime() - deadline < 0) {
+            try {
+                Thread.sleep(CLAIM_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for " + fileName);
+            }
+            Path file = fetchOrNull(fileName);
+            if(file != null)
+                return file;
+        }
+
+        try {
+            // published by the previous holder of the claim
+            Path file = claimed ? fetchOrNull(fileName) : null;
+            if(file != null)
+                return file;
+            misses.increment();
+            file = storage.write(fileName, generator);
+            publish(fileName, file);
+            return file;
+        } finally {
+            if(claimed)
+                release(fileName);
+        }
+    }
+
+    /**
+     * @return Whether the file was claimed, a store that can't be reached grants every claim
+     */
+    private boolean claim(String fileName) {
+        try {
+            return store.claim(fileName);
+        } catch (IOException e) {
+            storeErrors.increment();
+            return true;
+        }
+    }
+
+    private void release(String fileName) {
+        try {
+            store.release(fileName);
+        } catch (IOException e) {
+            // taken over by another node once it's stale
+            storeErrors.increment();
+        }
+    }
+
+    /**
+     * @return The file fetched into the storage, or {@code null} if the store doesn't have it
+     */
+    private Path fetch(String fileName) throws IOException {
+        if(!store.contains(fileName))
+            return null;
+        try {
+            Path file = storage.write(fileName, path -> store.fetch(fileName, path));
+            storeHits.increment();
+            return file;
+        } catch (NoSuchFileException e) {
+            // removed from the store in the meantime
+            return null;
+        }
+    }
+
+    /**
+     * Like {@link #fetch(String)}, but a store that can't be reached is treated
+     * like one without the file, so the file is generated instead.
+     */
+    private Path fetchOrNull(String fileName) {
+        try {
+            return fetch(fileName);
+        } catch (IOException e) {
+            storeErrors.increment();
+            return null;
+        }
+    }
+
+    private void publish(String fileName, Path file) {
+        try {
+            store.put(fileName, file);
+        } catch (IOException e) {
+            // the file is served from the storage either way
+            storeErrors.increment();
+        }
+    }
+}
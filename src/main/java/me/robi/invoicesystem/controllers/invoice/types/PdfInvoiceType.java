@@ -5,28 +5,65 @@ import com.itextpdf.text.pdf.PdfPCell;
 import com.itextpdf.text.pdf.PdfPTable;
 import com.itextpdf.text.pdf.PdfWriter;
 import com.itextpdf.text.pdf.draw.LineSeparator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.servlet.http.HttpServletRequest;
 import me.robi.invoicesystem.constants.PathConstants;
+import me.robi.invoicesystem.controllers.invoice.InvoiceTrace;
+import me.robi.invoicesystem.controllers.invoice.types.PdfAdmissionControl.AdmissionRejectedException;
 import me.robi.invoicesystem.entities.ProductEntity;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.util.UriComponentsBuilder;
 
-import java.io.File;
-import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
+import static me.robi.invoicesystem.constants.MetricConstants.*;
 import static me.robi.invoicesystem.constants.PathConstants.PDF_FILE_STORAGE;
+import static me.robi.invoicesystem.constants.ResponseConstants.PdfJobResponseConstants.*;
 import static me.robi.invoicesystem.constants.ResponseConstants.REDIRECT_URL;
 import static me.robi.invoicesystem.constants.ResponseConstants.RESPONSE_STATUS;
 
@@ -42,67 +79,470 @@ import static me.robi.invoicesystem.constants.ResponseConstants.RESPONSE_STATUS;
 @RequestMapping("/api")
 public class PdfInvoiceType implements InvoiceType {
     /**
-     * Temporary cache to store for already existing files
-     * to prevent abuse of file creation.
+     * Version of the PDF layout, part of the file name of every generated file.
+     * Should be increased whenever {@link #generatePdf(List, long, OutputStream)} changes its output,
+     * so files of the previous layout are not reused.
      */
-    private HashMap<List<ProductEntity>, UUID> fileNameCache = new HashMap<>();
+    public static final int TEMPLATE_VERSION = 2;
+
+    /**
+     * Amount of rows after which the products table is written to the document,
+     * keeping memory usage independent of the amount of lines.
+     */
+    public static final int FLUSH_ROWS = 500;
+
+    /**
+     * Relative widths of the name, quantity, amount and line total columns of the products table.
+     */
+    private static final float[] LINE_COLUMN_WIDTHS = {4, 1, 1.5f, 1.5f};
+    /**
+     * Relative widths of the key and value columns of the total sum table.
+     */
+    private static final float[] TOTAL_COLUMN_WIDTHS = {1, 1};
+
+    /**
+     * Name of the optional {@link Executor} bean rendering PDF files generated while the request waits.
+     */
+    public static final String PDF_RENDER_EXECUTOR = "pdfRenderExecutor";
+
+    /**
+     * Attributes of Tomcat to send a file with sendfile, without copying it through the heap.
+     */
+    private static final String SENDFILE_SUPPORTED_ATTRIBUTE = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTRIBUTE = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTRIBUTE = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTRIBUTE = "org.apache.tomcat.sendfile.end";
+
+    /**
+     * Defaults of the properties below, also used when the type is created outside of Spring,
+     * so tests and benchmarks run the same code paths as the application.
+     */
+    private static final String DEFAULT_HTTP_CACHE_MAX_AGE = "365d";
+    private static final int DEFAULT_FILE_CACHE_MAX_SIZE = 10000;
+    private static final String DEFAULT_FILE_CACHE_MAX_AGE = "7d";
+    private static final String DEFAULT_STORAGE_MAX_SIZE = "10GB";
+    private static final String DEFAULT_STORAGE_JANITOR_INTERVAL = "1m";
+    private static final String DEFAULT_STORE_CLAIM_WAIT = "5s";
+    private static final int DEFAULT_ASYNC_THRESHOLD = 1000;
+    private static final int DEFAULT_ASYNC_QUEUE_CAPACITY = 100;
+    private static final int DEFAULT_ADMISSION_MAX_QUEUED = 50;
+    private static final String DEFAULT_ADMISSION_MAX_WAIT = "2s";
+    private static final double DEFAULT_ADMISSION_CLIENT_RATE = 5;
+    private static final int DEFAULT_ADMISSION_CLIENT_BURST = 20;
+
+    @Value("${invoice.pdf.storage-directory:" + PDF_FILE_STORAGE + "}")
+    private String storageDirectory = PDF_FILE_STORAGE;
+    @Value("${invoice.pdf.http-cache.max-age:" + DEFAULT_HTTP_CACHE_MAX_AGE + "}")
+    private Duration httpCacheMaxAge = DurationStyle.detectAndParse(DEFAULT_HTTP_CACHE_MAX_AGE);
+    @Value("${invoice.pdf.cache.max-size:" + DEFAULT_FILE_CACHE_MAX_SIZE + "}")
+    private int fileCacheMaxSize = DEFAULT_FILE_CACHE_MAX_SIZE;
+    @Value("${invoice.pdf.cache.max-age:" + DEFAULT_FILE_CACHE_MAX_AGE + "}")
+    private Duration fileCacheMaxAge = DurationStyle.detectAndParse(DEFAULT_FILE_CACHE_MAX_AGE);
+    @Value("${invoice.pdf.storage.max-size:" + DEFAULT_STORAGE_MAX_SIZE + "}")
+    private DataSize storageMaxSize = DataSize.parse(DEFAULT_STORAGE_MAX_SIZE);
+    @Value("${invoice.pdf.storage.janitor-interval:" + DEFAULT_STORAGE_JANITOR_INTERVAL + "}")
+    private Duration storageJanitorInterval = DurationStyle.detectAndParse(DEFAULT_STORAGE_JANITOR_INTERVAL);
+    /**
+     * Directory shared by all nodes the generated files are published to, none if empty.
+     */
+    @Value("${invoice.pdf.store.directory:}")
+    private String storeDirectory = "";
+    /**
+     * How long a file another node is rendering is waited for, before it's rendered here as well.
+     */
+    @Value("${invoice.pdf.store.claim-wait:" + DEFAULT_STORE_CLAIM_WAIT + "}")
+    private Duration storeClaimWait = DurationStyle.detectAndParse(DEFAULT_STORE_CLAIM_WAIT);
+    /**
+     * Invoices with at least this many lines are rendered in the background.
+     */
+    @Value("${invoice.pdf.async.threshold:" + DEFAULT_ASYNC_THRESHOLD + "}")
+    private int asyncThreshold = DEFAULT_ASYNC_THRESHOLD;
+    @Value("${invoice.pdf.async.threads:0}")
+    private int asyncThreads = 0;
+    @Value("${invoice.pdf.async.queue-capacity:" + DEFAULT_ASYNC_QUEUE_CAPACITY + "}")
+    private int asyncQueueCapacity = DEFAULT_ASYNC_QUEUE_CAPACITY;
+    @Value("${invoice.pdf.admission.max-concurrent:0}")
+    private int admissionMaxConcurrent = 0;
+    @Value("${invoice.pdf.admission.max-queued:" + DEFAULT_ADMISSION_MAX_QUEUED + "}")
+    private int admissionMaxQueued = DEFAULT_ADMISSION_MAX_QUEUED;
+    @Value("${invoice.pdf.admission.max-wait:" + DEFAULT_ADMISSION_MAX_WAIT + "}")
+    private Duration admissionMaxWait = DurationStyle.detectAndParse(DEFAULT_ADMISSION_MAX_WAIT);
+    @Value("${invoice.pdf.admission.client-rate:" + DEFAULT_ADMISSION_CLIENT_RATE + "}")
+    private double admissionClientRate = DEFAULT_ADMISSION_CLIENT_RATE;
+    @Value("${invoice.pdf.admission.client-burst:" + DEFAULT_ADMISSION_CLIENT_BURST + "}")
+    private int admissionClientBurst = DEFAULT_ADMISSION_CLIENT_BURST;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry = Metrics.globalRegistry;
+
+    /**
+     * Runs the rendering of PDF files generated while the request waits, if present, see {@link #render(RenderTask)}.
+     * Keeps the CPU-bound rendering on a bounded pool when requests are served on virtual threads.
+     */
+    @Autowired(required = false)
+    @Qualifier(PDF_RENDER_EXECUTOR)
+    private Executor renderExecutor;
+
+    /**
+     * Shares the generated files with the other nodes, if present.
+     * Takes precedence over the invoice.pdf.store.directory property.
+     */
+    @Autowired(required = false)
+    private PdfStore store;
+
+    /**
+     * Cache of already existing files to prevent abuse of file creation,
+     * filled with the files of the storage directory on startup.
+     */
+    private PdfFileCache fileCache;
+
+    /**
+     * Renders large invoices in the background.
+     */
+    private PdfRenderQueue renderQueue;
+
+    /**
+     * Limits the renders per client and at a time.
+     */
+    private PdfAdmissionControl admissionControl;
+
+    @PostConstruct
+    public void initFileCache() throws IOException {
+        PdfStorage storage = new PdfStorage(Paths.get(storageDirectory), storageMaxSize.toBytes(), fileCacheMaxSize, fileCacheMaxAge);
+        if(store == null)
+            store = storeDirectory.isEmpty() ? new LocalPdfStore() : new SharedDirectoryPdfStore(Paths.get(storeDirectory));
+        fileCache = new PdfFileCache(storage, store, storeClaimWait);
+        fileCache.rebuild();
+        storage.startJanitor(storageJanitorInterval);
+        renderQueue = new PdfRenderQueue(asyncThreads > 0 ? asyncThreads : Runtime.getRuntime().availableProcessors(), asyncQueueCapacity);
+        admissionControl = new PdfAdmissionControl(admissionMaxConcurrent > 0 ? admissionMaxConcurrent : Runtime.getRuntime().availableProcessors(),
+                admissionMaxQueued, admissionMaxWait, admissionClientRate, admissionClientBurst);
+
+        Gauge.builder(PDF_CACHE_SIZE, fileCache, PdfFileCache::size).register(meterRegistry);
+        FunctionCounter.builder(PDF_CACHE_HITS, fileCache, PdfFileCache::getHitCount).register(meterRegistry);
+        FunctionCounter.builder(PDF_CACHE_MISSES, fileCache, PdfFileCache::getMissCount).register(meterRegistry);
+        FunctionCounter.builder(PDF_STORE_HITS, fileCache, PdfFileCache::getStoreHitCount).register(meterRegistry);
+        FunctionCounter.builder(PDF_STORE_ERRORS, fileCache, PdfFileCache::getStoreErrorCount).register(meterRegistry);
+        Gauge.builder(PDF_CACHE_HIT_RATIO, fileCache, cache -> {
+            double requests = cache.getHitCount() + cache.getMissCount();
+            return requests == 0 ? 0 : cache.getHitCount() / requests;
+        }).register(meterRegistry);
+        Gauge.builder(PDF_STORAGE_BYTES, storage, PdfStorage::getTotalBytes).baseUnit(BaseUnits.BYTES).register(meterRegistry);
+        FunctionCounter.builder(PDF_STORAGE_EVICTIONS, storage, PdfStorage::getEvictionCount).register(meterRegistry);
+        Gauge.builder(PDF_QUEUE_DEPTH, renderQueue, PdfRenderQueue::getQueueDepth).register(meterRegistry);
+        Gauge.builder(PDF_IN_FLIGHT, renderQueue, PdfRenderQueue::getInFlight).register(meterRegistry);
+        Gauge.builder(PDF_ADMISSION_ACTIVE, admissionControl, PdfAdmissionControl::getActive).register(meterRegistry);
+        Gauge.builder(PDF_ADMISSION_WAITING, admissionControl, PdfAdmissionControl::getWaiting).register(meterRegistry);
+        FunctionCounter.builder(PDF_ADMISSION_REJECTED, admissionControl, PdfAdmissionControl::getClientRejectionCount).tag(TAG_REASON, "client").register(meterRegistry);
+        FunctionCounter.builder(PDF_ADMISSION_REJECTED, admissionControl, PdfAdmissionControl::getSaturationRejectionCount).tag(TAG_REASON, "saturated").register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdownRenderQueue() {
+        if(renderQueue != null)
+            renderQueue.shutdown();
+        if(fileCache != null)
+            fileCache.getStorage().shutdown();
+    }
 
     /**
-     * Returns link to the PDF file. If an exact file
-     * like that doesn't exist yet, it creates another one.
      * @param request HttpServletRequest provided by Spring
-     * @param entities List of all entities
-     * @param totalSum Total sum of the entities amount
-     * @param file The file reference
+     * @param fileName Name of the generated file
      * @return Link to access the PDF file
      */
-    public ResponseEntity getResponse(HttpServletRequest request, List<ProductEntity> entities, int totalSum, File file) {
-        if(!Files.exists(file.toPath()))
-            try(FileOutputStream fileOutputStream = new FileOutputStream(file)) {
-                generatePdf(entities, totalSum, fileOutputStream);
-            } catch (DocumentException | IOException e) {
-                return ResponseEntity.internalServerError().body(Collections.singletonMap(RESPONSE_STATUS, String.format("Runtime Exception (%s): %s", e.getClass().getName(), e.getMessage())));
-            }
-
-        return ResponseEntity.ok().body(Collections.singletonMap(
-                REDIRECT_URL,
-                UriComponentsBuilder.fromUriString(request.getRequestURL().toString())
-                        .replacePath("/api/access-pdf/" + file.getName())
-                        .build().toString()
-        ));
+    private ResponseEntity redirect(HttpServletRequest request, String fileName) {
+        try(InvoiceTrace.Phase phase = InvoiceTrace.of(request).phase(InvoiceTrace.URL)) {
+            return ResponseEntity.ok().body(Collections.singletonMap(
+                    REDIRECT_URL,
+                    UriComponentsBuilder.fromUriString(request.getRequestURL().toString())
+                            .replacePath("/api/access-pdf/" + fileName)
+                            .build().toString()
+            ));
+        }
     }
 
     /**
      * Returns link to the PDF file. If an exact file
      * like that doesn't exist yet, it creates another one.
      * @param request HttpServletRequest provided by Spring
-     * @param entities List of all entities
-     * @param totalSum Total sum of the entities amount
+     * @param lines Lines of the invoice, one per distinct product
+     * @param totalSum Total sum of the line totals
      * @return Link to access the PDF file
      */
     @Override
-    public ResponseEntity getResponse(HttpServletRequest request, List<ProductEntity> entities, int totalSum) {
-        fileNameCache.putIfAbsent(entities, UUID.randomUUID());
-        String fileName = String.format("%s.pdf", fileNameCache.get(entities)).replace("-", "");
-        return getResponse(request, entities, totalSum, Paths.get(PDF_FILE_STORAGE, fileName).toFile());
+    public ResponseEntity getResponse(HttpServletRequest request, List<InvoiceLine> lines, long totalSum) {
+        String fileName = getFileName(lines);
+        // an existing file is counted as a hit by the file cache below
+        if(lines.size() >= asyncThreshold && fileCache.find(fileName) == null)
+            return submitRenderJob(request, lines, totalSum, fileName);
+
+        try {
+            InvoiceTrace trace = InvoiceTrace.of(request);
+            String client = request.getRemoteAddr();
+            fileCache.get(fileName, path -> {
+                try(PdfAdmissionControl.Permit permit = admissionControl.acquire(client)) {
+                    render(() -> writePdf(lines, totalSum, path, trace));
+                }
+            });
+        } catch (CompletionException e) {
+            if(e.getCause() instanceof AdmissionRejectedException rejection)
+                return serviceUnavailable(rejection);
+            throw e;
+        } catch (AdmissionRejectedException e) {
+            return serviceUnavailable(e);
+        } catch (IOException e) {
+            return ResponseEntity.internalServerError().body(Collections.singletonMap(RESPONSE_STATUS, String.format("Runtime Exception (%s): %s", e.getClass().getName(), e.getMessage())));
+        }
+        return redirect(request, fileName);
+    }
+
+    /**
+     * Queues the PDF file to be rendered in the background.
+     * @param request HttpServletRequest provided by Spring
+     * @param lines Lines of the invoice, one per distinct product
+     * @param totalSum Total sum of the line totals
+     * @param fileName Name of the file to render
+     * @return 202 with the job ID and a URL to poll its status, or 503 if the queue is full
+     */
+    private ResponseEntity submitRenderJob(HttpServletRequest request, List<InvoiceLine> lines, long totalSum, String fileName) {
+        String jobId = fileName.substring(0, fileName.length() - ".pdf".length());
+        PdfRenderQueue.Job job;
+        try {
+            admissionControl.checkClient(request.getRemoteAddr());
+            admissionControl.checkQueue(renderQueue.getQueueDepth());
+        } catch (AdmissionRejectedException e) {
+            return serviceUnavailable(e);
+        }
+        try {
+            job = renderQueue.submit(jobId, () -> fileCache.get(fileName, path -> writePdf(lines, totalSum, path, InvoiceTrace.of(null))));
+        } catch (RejectedExecutionException e) {
+            return serviceUnavailable(new AdmissionRejectedException("Too many PDF files are being generated, try again later.", 1));
+        }
+
+        String statusUrl = UriComponentsBuilder.fromUriString(request.getRequestURL().toString())
+                .replacePath("/api/pdf-jobs/" + jobId)
+                .build().toString();
+        Map<String, Object> responseBody = new HashMap<>();
+        responseBody.put(JOB_ID, jobId);
+        responseBody.put(JOB_STATUS, job.getStatus());
+        responseBody.put(STATUS_URL, statusUrl);
+        return ResponseEntity.accepted().location(URI.create(statusUrl)).body(responseBody);
+    }
+
+    /**
+     * @param rejection Why the render was not admitted
+     * @return 503 with a Retry-After header
+     */
+    private ResponseEntity serviceUnavailable(AdmissionRejectedException rejection) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(rejection.getRetryAfterSeconds()))
+                .body(Collections.singletonMap(RESPONSE_STATUS, rejection.getMessage()));
+    }
+
+    /**
+     * Returns the status of a PDF file rendered in the background.
+     * @param request HttpServletRequest provided by Spring
+     * @param jobId ID of the job, as returned when the invoice was queued
+     * @return Status of the job, and the link to the PDF file once it's done
+     */
+    @GetMapping("/pdf-jobs/{id}")
+    public ResponseEntity getRenderJob(HttpServletRequest request, @PathVariable(value = "id") String jobId) {
+        if(!verifyFileName(jobId, ""))
+            return ResponseEntity.badRequest().body(Collections.singletonMap(RESPONSE_STATUS, "Illegal job ID"));
+
+        String fileName = jobId + ".pdf";
+        PdfRenderQueue.Job job = renderQueue.getJob(jobId);
+        PdfRenderQueue.Status status = job != null ? job.getStatus() : null;
+        if(status != PdfRenderQueue.Status.QUEUED && status != PdfRenderQueue.Status.RUNNING && fileCache.find(fileName) != null)
+            status = PdfRenderQueue.Status.DONE;
+        if(status == null)
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Collections.singletonMap(RESPONSE_STATUS, String.format("Job %s does not exist.", jobId)));
+
+        Map<String, Object> responseBody = new HashMap<>();
+        responseBody.put(JOB_ID, jobId);
+        responseBody.put(JOB_STATUS, status);
+        if(status == PdfRenderQueue.Status.DONE)
+            responseBody.put(REDIRECT_URL, UriComponentsBuilder.fromUriString(request.getRequestURL().toString())
+                    .replacePath("/api/access-pdf/" + fileName)
+                    .build().toString());
+        if(status == PdfRenderQueue.Status.FAILED)
+            responseBody.put(RESPONSE_STATUS, job.getError());
+        return ResponseEntity.ok(responseBody);
+    }
+
+    /**
+     * Lists the state of the background rendering.
+     * @return Amount of queued, rendering and finished jobs, and the average render time
+     */
+    @GetMapping("/pdf-jobs")
+    public ResponseEntity getRenderQueueStats() {
+        long finished = renderQueue.getCompletedCount() + renderQueue.getFailedCount();
+        Map<String, Object> responseBody = new HashMap<>();
+        responseBody.put(QUEUE_DEPTH, renderQueue.getQueueDepth());
+        responseBody.put(IN_FLIGHT, renderQueue.getInFlight());
+        responseBody.put(COMPLETED, renderQueue.getCompletedCount());
+        responseBody.put(FAILED, renderQueue.getFailedCount());
+        responseBody.put(AVERAGE_RENDER_MILLIS, finished == 0 ? 0 : renderQueue.getTotalRenderNanos() / 1_000_000.0 / finished);
+        return ResponseEntity.ok(responseBody);
+    }
+
+    /**
+     * A render, see {@link #render(RenderTask)}.
+     */
+    public interface RenderTask {
+        void render() throws IOException;
+    }
+
+    /**
+     * Runs a render on the {@link #renderExecutor} if there is one, waiting for it to finish,
+     * otherwise on the calling thread. Every PDF file rendered while a request waits goes through here.
+     * @param task The render
+     * @throws IOException If the render fails
+     */
+    public void render(RenderTask task) throws IOException {
+        if(renderExecutor == null) {
+            task.render();
+            return;
+        }
+
+        try {
+            CompletableFuture.runAsync(() -> {
+                try {
+                    task.render();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, renderExecutor).join();
+        } catch (CompletionException e) {
+            if(e.getCause() instanceof UncheckedIOException uncheckedIOException)
+                throw uncheckedIOException.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * Generates the PDF file and writes it to the given path. The rendering streams into the file
+     * as it goes, so the {@link InvoiceTrace#WRITE} phase only covers opening and closing it.
+     */
+    private void writePdf(List<InvoiceLine> lines, long totalSum, Path path, InvoiceTrace trace) throws IOException {
+        OutputStream outputStream;
+        try(InvoiceTrace.Phase phase = trace.phase(InvoiceTrace.WRITE)) {
+            outputStream = Files.newOutputStream(path);
+        }
+        try(InvoiceTrace.Phase phase = trace.phase(InvoiceTrace.RENDER)) {
+            generatePdf(lines, totalSum, outputStream);
+        } catch (DocumentException e) {
+            throw new IOException(e);
+        } finally {
+            try(InvoiceTrace.Phase phase = trace.phase(InvoiceTrace.WRITE)) {
+                outputStream.close();
+            }
+        }
+    }
+
+    /**
+     * Creates a file name out of the digest of every line's product ID, name, amount and quantity,
+     * as well as the {@link #TEMPLATE_VERSION}. The same lines always result in the same name.
+     * @param lines Lines of the invoice
+     * @return Name of the PDF file, with the .pdf extension
+     */
+    public static String getFileName(List<InvoiceLine> lines) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES * 2 + Integer.BYTES * 2);
+        buffer.putInt(TEMPLATE_VERSION).putInt(lines.size()).flip();
+        digest.update(buffer);
+        for(InvoiceLine line : lines) {
+            ProductEntity product = line.getProduct();
+            byte[] name = String.valueOf(product.getName()).getBytes(StandardCharsets.UTF_8);
+            buffer.clear();
+            buffer.putLong(product.getId()).putInt(product.getAmount()).putLong(line.getQuantity()).putInt(name.length).flip();
+            digest.update(buffer);
+            digest.update(name);
+        }
+
+        return HexFormat.of().formatHex(digest.digest(), 0, 16) + ".pdf";
+    }
+
+    /**
+     * @return The admission control of renders, or {@code null} if the bean isn't initialized yet.
+     */
+    public PdfAdmissionControl getAdmissionControl() {
+        return admissionControl;
+    }
+
+    /**
+     * @return The executor of {@link #render(RenderTask)}, or {@code null} if renders run on the calling thread.
+     */
+    public Executor getRenderExecutor() {
+        return renderExecutor;
+    }
+
+    /**
+     * @return The cache of generated files, or {@code null} if the bean isn't initialized yet.
+     */
+    public PdfFileCache getFileCache() {
+        return fileCache;
+    }
+
+    @Override
+    public String getName() {
+        return PDF_INVOICE;
+    }
+
+    /**
+     * Renders the PDF file into a discarding OutputStream, without storing it or recording it in the metrics.
+     */
+    @Override
+    public void warmUp(List<InvoiceLine> lines, long totalSum) throws IOException {
+        try {
+            generatePdf(lines, totalSum, OutputStream.nullOutputStream(), new Font());
+        } catch (DocumentException e) {
+            throw new IOException(e);
+        }
     }
 
     /**
      * Generates the PDF file, and writes it into an OutputStream
-     * @param entities List of all entities
+     * @param lines Lines of the invoice, one per distinct product
      * @param totalSum Their total sum
      * @param outputStream The OutputStrea to write into
      * @return The finished, closed Document
      * @throws DocumentException An exception regarding Document should it happen
      */
-    public Document generatePdf(List<ProductEntity> entities, int totalSum, OutputStream outputStream) throws DocumentException {
+    public Document generatePdf(List<InvoiceLine> lines, long totalSum, OutputStream outputStream) throws DocumentException {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        CountingOutputStream countingOutputStream = new CountingOutputStream(outputStream);
+        try {
+            return generatePdf(lines, totalSum, countingOutputStream, new Font());
+        } finally {
+            sample.stop(meterRegistry.timer(PDF_RENDER));
+            DistributionSummary.builder(PDF_WRITTEN).baseUnit(BaseUnits.BYTES).register(meterRegistry).record(countingOutputStream.count);
+        }
+    }
+
+    private Document generatePdf(List<InvoiceLine> lines, long totalSum, OutputStream outputStream, Font font) throws DocumentException {
         Document document = new Document();
         PdfWriter.getInstance(document, outputStream);
 
         document.open();
         {
-            PdfPTable table = new PdfPTable(2);
-            entities.forEach(product -> addCellsToTable(table, product));
+            // rows are written to the document every FLUSH_ROWS rows, so large invoices aren't held in memory
+            PdfPTable table = createTable(LINE_COLUMN_WIDTHS);
+            table.setComplete(false);
+            int rows = 0;
+            for(InvoiceLine line : lines) {
+                addCellsToTable(table, font, line.getProduct().getName(), String.valueOf(line.getQuantity()),
+                        String.valueOf(line.getProduct().getAmount()), String.valueOf(line.getLineTotal()));
+                if(++rows % FLUSH_ROWS == 0)
+                    document.add(table);
+            }
+            table.setComplete(true);
             document.add(table);
         }
 
@@ -111,8 +551,8 @@ public class PdfInvoiceType implements InvoiceType {
         document.add(separator);
 
         {
-            PdfPTable table = new PdfPTable(2);
-            addCellsToTable(table, "Total Sum", totalSum);
+            PdfPTable table = createTable(TOTAL_COLUMN_WIDTHS);
+            addCellsToTable(table, font, "Total Sum", String.valueOf(totalSum));
             document.add(table);
         }
 
@@ -121,62 +561,140 @@ public class PdfInvoiceType implements InvoiceType {
         return document;
     }
 
-
-    private void addCellsToTable(PdfPTable table, ProductEntity product) {
-        addCellsToTable(table, product.getName(), String.valueOf(product.getAmount()));
-    }
-
-    private void addCellsToTable(PdfPTable table, String key, Object value) {
-        if(table.getNumberOfColumns() != 2) throw new IllegalArgumentException("Table Column Count is not 2.");
-        {
-            PdfPCell cell = new PdfPCell();
-            cell.setPhrase(new Phrase(key));
-            cell.setBorder(0);
-            table.addCell(cell);
-        }
-        {
-            PdfPCell cell = new PdfPCell();
-            cell.setPhrase(new Phrase(String.valueOf(value)));
-            cell.setBorder(0);
-            cell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-            table.addCell(cell);
-        }
+    /**
+     * Creates a table of a key column followed by value columns, whose default cell
+     * is used as the template of every added cell.
+     * @param columnWidths Relative width of every column
+     */
+    private PdfPTable createTable(float[] columnWidths) {
+        PdfPTable table = new PdfPTable(columnWidths);
+        table.getDefaultCell().setBorder(0);
+        return table;
     }
 
     /**
-     * Accesses the given file found in {@link PathConstants#PDF_FILE_STORAGE}, making
-     * sure it's a valid file with a .pdf extension.
-     * @param fileName Name of the file, with an optional .pdf extension at the end
-     * @return An error message if the file is missing, or on invalid file format (illegal characters), or the contents of the pdf file found in {@link PathConstants#PDF_FILE_STORAGE}/{@param fileName}
+     * Adds a row to a table created by {@link #createTable(float[])}, the key aligned left and the values right.
      */
-    @GetMapping("/access-pdf/{file}")
-    public ResponseEntity accessPdf(@PathVariable(value = "file") String fileName) {
-        return accessPdf(fileName, PDF_FILE_STORAGE);
+    private void addCellsToTable(PdfPTable table, Font font, String key, String... values) {
+        PdfPCell template = table.getDefaultCell();
+        template.setHorizontalAlignment(Element.ALIGN_LEFT);
+        table.addCell(new Phrase(key, font));
+        template.setHorizontalAlignment(Element.ALIGN_RIGHT);
+        for(String value : values)
+            table.addCell(new Phrase(value, font));
     }
 
     /**
-     * Accesses the given file found in {@link PathConstants#PDF_FILE_STORAGE}, making
-     * sure it's a valid file with a .pdf extension.
+     * Accesses the given file found in the storage directory, {@link PathConstants#PDF_FILE_STORAGE} by default, making
+     * sure it's a valid file with a .pdf extension. The file is looked up in the index of the {@link PdfStorage}.
      * @param fileName Name of the file, with an optional .pdf extension at the end
-     * @param directory The directory to look for.
-     * @return An error message if the file is missing, or on invalid file format (illegal characters), or the contents of the pdf file found in {@link PathConstants#PDF_FILE_STORAGE}/{@param fileName}
+     * @param request HttpServletRequest provided by Spring
+     * @return An error message if the file is missing, or on invalid file format (illegal characters), or the contents of the pdf file found in the storage directory
      */
-    public ResponseEntity accessPdf(String fileName, String directory) {
+    @GetMapping("/access-pdf/{file}")
+    public ResponseEntity accessPdf(@PathVariable(value = "file") String fileName, HttpServletRequest request) {
         if(!fileName.endsWith(".pdf"))
             fileName = fileName + ".pdf";
         if(!verifyFileName(fileName))
             return ResponseEntity.badRequest().body(Collections.singletonMap(RESPONSE_STATUS, "Illegal file access"));
 
-        Path path = Paths.get(directory, fileName);
-
-        if(!Files.exists(path))
+        Path path = fileCache.find(fileName);
+        if(path == null)
             return ResponseEntity.badRequest().body(Collections.singletonMap(RESPONSE_STATUS, String.format("File %s does not exist.", fileName)));
+        return servePdf(fileName, path, request);
+    }
 
+    /**
+     * Serves an already verified PDF file of the storage, see {@link #accessPdf(String, HttpServletRequest)}.
+     *
+     * Since files never change once written, they are served with a strong ETag and a long-lived
+     * immutable Cache-Control, answering conditional requests with 304. The ETag is the digest of the file's
+     * contents, not its name: every render of an invoice has its own creation date and ID, so copies rendered by
+     * different nodes, or again after the file expired, differ. A copy fetched from another node keeps its ETag. The file is handed to Tomcat's
+     * sendfile if it's supported, otherwise it's streamed as a {@link FileSystemResource}, which also handles Range requests.
+     * @param request HttpServletRequest provided by Spring, or {@code null} to skip conditional requests and sendfile
+     */
+    private ResponseEntity servePdf(String fileName, Path path, HttpServletRequest request) {
+        BasicFileAttributes attributes;
+        String digest;
         try {
-            return ResponseEntity.ok().contentType(MediaType.APPLICATION_PDF).body(Files.readAllBytes(path));
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            digest = fileCache.getStorage().digest(fileName);
+        } catch (NoSuchFileException e) {
+            return ResponseEntity.badRequest().body(Collections.singletonMap(RESPONSE_STATUS, String.format("File %s does not exist.", fileName)));
         } catch (IOException e) {
             return ResponseEntity.internalServerError().body(Collections.singletonMap(RESPONSE_STATUS, String.format("Runtime Exception (%s): %s", e.getClass().getName(), e.getMessage())));
         }
+
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        long size = attributes.size();
+        String eTag = "\"" + digest + "\"";
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(eTag);
+        headers.setLastModified(lastModified);
+        headers.setCacheControl(CacheControl.maxAge(httpCacheMaxAge).cachePublic().getHeaderValue() + ", immutable");
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        if(request != null) {
+            if(new ServletWebRequest(request).checkNotModified(eTag, lastModified))
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
+
+            if(request.getHeader(HttpHeaders.RANGE) == null && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED_ATTRIBUTE))) {
+                request.setAttribute(SENDFILE_FILENAME_ATTRIBUTE, path.toAbsolutePath().toString());
+                request.setAttribute(SENDFILE_START_ATTRIBUTE, 0L);
+                request.setAttribute(SENDFILE_END_ATTRIBUTE, size);
+                recordServedBytes(size);
+                return ResponseEntity.ok().headers(headers).contentType(MediaType.APPLICATION_PDF).contentLength(size).build();
+            }
+        }
+
+        recordServedBytes(request == null ? size : getRequestedBytes(request.getHeader(HttpHeaders.RANGE), size));
+        return ResponseEntity.ok().headers(headers).contentType(MediaType.APPLICATION_PDF).body(new FileSystemResource(path));
+    }
+
+    /**
+     * @param range The Range header of the request, or {@code null}
+     * @param size Size of the file
+     * @return Amount of bytes that will be sent for the requested range
+     */
+    private long getRequestedBytes(String range, long size) {
+        if(range == null)
+            return size;
+        try {
+            long bytes = 0;
+            for(HttpRange httpRange : HttpRange.parseRanges(range))
+                bytes += httpRange.getRangeEnd(size) - httpRange.getRangeStart(size) + 1;
+            return bytes;
+        } catch (IllegalArgumentException e) {
+            return 0;
+        }
+    }
+
+    private void recordServedBytes(long bytes) {
+        Counter.builder(PDF_SERVED).baseUnit(BaseUnits.BYTES).register(meterRegistry).increment(bytes);
+    }
+
+    /**
+     * Counts the bytes written through it.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream outputStream) {
+            super(outputStream);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
     }
 
     /**
@@ -0,0 +1,188 @@
+package me.robi.invoicesystem.controllers.invoice.types;
+
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Renders PDF files in the background on a bounded, dedicated pool of threads,
+ * so large invoices don't tie up the threads serving requests.
+ *
+ * Every render is tracked as a job, identified by the name of the file it generates.
+ * Submitting a job that's already queued or running returns the existing one.
+ */
+public class PdfRenderQueue {
+    /**
+     * Finished jobs are forgotten after this long.
+     */
+    public static final long JOB_RETENTION_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    public enum Status {
+        QUEUED, RUNNING, DONE, FAILED
+    }
+
+    /**
+     * A single render job, its fields are updated by the rendering thread.
+     */
+    public static class Job {
+        private final String id;
+        private volatile Status status = Status.QUEUED;
+        private volatile String error;
+        private volatile long finished;
+
+        private Job(String id) {
+            this.id = id;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+
+    /**
+     * The work of a job, generating its file.
+     */
+    @FunctionalInterface
+    public interface RenderTask {
+        void render() throws Exception;
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder renderNanos = new LongAdder();
+    private volatile long lastPurge = System.currentTimeMillis();
+
+    /**
+     * @param threads Amount of rendering threads
+     * @param queueCapacity Maximum amount of jobs waiting for a thread, further jobs are rejected
+     */
+    public PdfRenderQueue(int threads, int queueCapacity) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "pdf-render-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues a job, unless a job with the same ID is already queued or running.
+     * @param id ID of the job, the name of the file it generates
+     * @param task The work of the job
+     * @return The queued or already existing job
+     * @throws RejectedExecutionException If the queue is full
+     */
+    public Job submit(String id, RenderTask task) {
+        purgeFinishedJobs();
+
+        Job job = new Job(id);
+        Job existing = jobs.putIfAbsent(id, job);
+        while(existing != null) {
+            if(existing.status == Status.QUEUED || existing.status == Status.RUNNING)
+                return existing;
+            if(jobs.replace(id, existing, job))
+                break;
+            existing = jobs.putIfAbsent(id, job);
+        }
+
+        try {
+            executor.execute(() -> run(job, task));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(id, job);
+            throw e;
+        }
+        return job;
+    }
+
+    /**
+     * @param id ID of the job
+     * @return The job, or {@code null} if it doesn't exist or has been forgotten
+     */
+    public Job getJob(String id) {
+        return jobs.get(id);
+    }
+
+    /**
+     * @return Amount of jobs waiting for a thread.
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return Amount of jobs currently rendering.
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return Amount of successfully finished jobs.
+     */
+    public long getCompletedCount() {
+        return completed.sum();
+    }
+
+    /**
+     * @return Amount of failed jobs.
+     */
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    /**
+     * @return Total time spent rendering finished jobs, in nanoseconds.
+     */
+    public long getTotalRenderNanos() {
+        return renderNanos.sum();
+    }
+
+    /**
+     * Stops accepting new jobs and lets the queued ones finish.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private void run(Job job, RenderTask task) {
+        job.status = Status.RUNNING;
+        inFlight.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            task.render();
+            job.status = Status.DONE;
+            completed.increment();
+        } catch (Exception e) {
+            job.error = String.format("Runtime Exception (%s): %s", e.getClass().getName(), e.getMessage());
+            job.status = Status.FAILED;
+            failed.increment();
+        } finally {
+            renderNanos.add(System.nanoTime() - start);
+            job.finished = System.currentTimeMillis();
+            inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * Forgets finished jobs older than {@link #JOB_RETENTION_MILLIS}, at most once a minute.
+     */
+    private void purgeFinishedJobs() {
+        long now = System.currentTimeMillis();
+        if(now - lastPurge < TimeUnit.MINUTES.toMillis(1))
+            return;
+        lastPurge = now;
+        jobs.values().removeIf(job -> job.finished != 0 && now - job.finished > JOB_RETENTION_MILLIS);
+    }
+}
@@ -0,0 +1,308 @@
+package me.robi.invoicesystem.controllers.invoice.types;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Manages the generated files of a directory, bounded by their total size,
+ * their amount and their age.
+ *
+ * Files are spread over two levels of subdirectories named after the first characters
+ * of the file name, so no single directory grows too large. Every file is written to a
+ * temporary file first and moved into place once it's complete, a file is never visible half-written.
+ *
+ * The files are indexed in memory, looking a file up never touches the disk. A janitor thread
+ * regularly deletes files older than the maximum age, and then the least recently accessed
+ * ones until the directory fits into its bounds.
+ */
+public class PdfStorage {
+    /**
+     * Directory inside the storage directory that holds files being written.
+     */
+    public static final String TEMP_DIRECTORY = ".tmp";
+
+    /**
+     * Generates a file at the given path.
+     */
+    @FunctionalInterface
+    public interface FileGenerator {
+        void generate(Path file) throws IOException;
+    }
+
+    private final Path directory;
+    private final Path tempDirectory;
+    private final long maxBytes;
+    private final int maxFiles;
+    private final long maxAgeMillis;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final LongAdder evictions = new LongAdder();
+    private ScheduledExecutorService janitor;
+
+    /**
+     * @param directory The directory the files are stored in
+     * @param maxBytes Maximum total size of the files
+     * @param maxFiles Maximum amount of files
+     * @param maxAge Files older than this are deleted
+     */
+    public PdfStorage(Path directory, long maxBytes, int maxFiles, Duration maxAge) {
+        this.directory = directory;
+        this.tempDirectory = directory.resolve(TEMP_DIRECTORY);
+        this.maxBytes = maxBytes;
+        this.maxFiles = maxFiles;
+        this.maxAgeMillis = maxAge.toMillis();
+    }
+
+    /**
+     * Creates the directory if needed, deletes leftover temporary files, moves files
+     * of the previous flat layout into their subdirectory, and indexes every file.
+     * Files beyond the bounds are deleted right away.
+     * @throws IOException If the directory can't be read
+     */
+    public void rebuild() throws IOException {
+        Files.createDirectories(tempDirectory);
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(tempDirectory)) {
+            for(Path file : stream)
+                Files.deleteIfExists(file);
+        }
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.pdf")) {
+            for(Path file : stream) {
+                Path target = resolve(file.getFileName().toString());
+                Files.createDirectories(target.getParent());
+                Files.move(file, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        entries.clear();
+        totalBytes.set(0);
+        try(Stream<Path> files = Files.find(directory, 3, (file, attributes) -> attributes.isRegularFile()
+                && file.getFileName().toString().endsWith(".pdf") && !file.startsWith(tempDirectory))) {
+            for(Path file : (Iterable<Path>) files::iterator) {
+                String fileName = file.getFileName().toString();
+                if(!file.equals(resolve(fileName)))
+                    continue;
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                index(fileName, file, attributes.size(), attributes.lastModifiedTime().toMillis());
+            }
+        }
+        clean();
+    }
+
+    /**
+     * Starts the janitor thread, enforcing the bounds in the given interval.
+     * @param interval Time between two cleanups
+     */
+    public synchronized void startJanitor(Duration interval) {
+        if(janitor != null)
+            return;
+        janitor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "pdf-janitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        janitor.scheduleWithFixedDelay(this::clean, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the janitor thread.
+     */
+    public synchronized void shutdown() {
+        if(janitor != null)
+            janitor.shutdownNow();
+        janitor = null;
+    }
+
+    /**
+     * @param fileName Name of the file
+     * @return Where the file is stored, whether it exists or not
+     */
+    public Path resolve(String fileName) {
+        return resolve(directory, fileName);
+    }
+
+    /**
+     * Lays the files out in two levels of directories named after the start of the file name,
+     * so no directory holds too many files.
+     * @param directory The directory of the storage
+     * @param fileName Name of the file
+     * @return Where the file is stored, whether it exists or not
+     */
+    public static Path resolve(Path directory, String fileName) {
+        String name = fileName.endsWith(".pdf") ? fileName.substring(0, fileName.length() - ".pdf".length()) : fileName;
+        String padded = name.length() >= 4 ? name : (name + "____").substring(0, 4);
+        return directory.resolve(padded.substring(0, 2)).resolve(padded.substring(2, 4)).resolve(fileName);
+    }
+
+    /**
+     * Looks a file up in the index, marking it as accessed.
+     * @param fileName Name of the file
+     * @return Path to the file, or {@code null} if it doesn't exist or is too old
+     */
+    public Path find(String fileName) {
+        Entry entry = entries.get(fileName);
+        if(entry == null)
+            return null;
+        long now = System.currentTimeMillis();
+        if(now - entry.created >= maxAgeMillis)
+            return null;
+        entry.lastAccess = now;
+        return entry.file;
+    }
+
+    /**
+     * Generates a file into a temporary file, and moves it into place once it's complete.
+     * An already existing file of the same name is replaced.
+     * @param fileName Name of the file
+     * @param generator Writes the contents of the file
+     * @return Path to the file
+     * @throws IOException If generating or moving the file fails
+     */
+    public Path write(String fileName, FileGenerator generator) throws IOException {
+        Path target = resolve(fileName);
+        Path temp = tempDirectory.resolve(fileName + "." + UUID.randomUUID() + ".tmp");
+        Files.createDirectories(tempDirectory);
+        try {
+            generator.generate(temp);
+            Files.createDirectories(target.getParent());
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        BasicFileAttributes attributes = Files.readAttributes(target, BasicFileAttributes.class);
+        index(fileName, target, attributes.size(), attributes.lastModifiedTime().toMillis());
+        return target;
+    }
+
+    /**
+     * Digests the contents of a file, once per write of the file. Unlike its name, the digest
+     * tells apart two renders of the same invoice, which differ in their creation date and ID.
+     * @param fileName Name of the file
+     * @return The hex encoded SHA-256 digest of the contents of the file
+     * @throws NoSuchFileException If the file isn't in the storage
+     * @throws IOException If reading the file fails
+     */
+    public String digest(String fileName) throws IOException {
+        Entry entry = entries.get(fileName);
+        if(entry == null)
+            throw new NoSuchFileException(fileName);
+        String digest = entry.digest;
+        if(digest == null) {
+            MessageDigest messageDigest;
+            try {
+                messageDigest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+            try(InputStream inputStream = new DigestInputStream(Files.newInputStream(entry.file), messageDigest)) {
+                inputStream.transferTo(OutputStream.nullOutputStream());
+            }
+            entry.digest = digest = HexFormat.of().formatHex(messageDigest.digest());
+        }
+        return digest;
+    }
+
+    /**
+     * @return Amount of files in the storage.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return Total size of the files in the storage, in bytes.
+     */
+    public long getTotalBytes() {
+        return totalBytes.get();
+    }
+
+    /**
+     * @return Amount of files deleted by the janitor.
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Deletes files older than the maximum age, and then the least recently
+     * accessed ones until the storage fits into its bounds.
+     */
+    public synchronized void clean() {
+        long now = System.currentTimeMillis();
+        entries.entrySet().stream()
+                .filter(e -> now - e.getValue().created >= maxAgeMillis)
+                .map(Map.Entry::getKey)
+                .toList()
+                .forEach(this::delete);
+
+        if(entries.size() <= maxFiles && totalBytes.get() <= maxBytes)
+            return;
+        for(String fileName : entries.entrySet().stream()
+                .sorted(Comparator.comparingLong(e -> e.getValue().lastAccess))
+                .map(Map.Entry::getKey)
+                .toList()) {
+            if(entries.size() <= maxFiles && totalBytes.get() <= maxBytes)
+                break;
+            delete(fileName);
+        }
+    }
+
+    private void index(String fileName, Path file, long size, long created) {
+        Entry previous = entries.put(fileName, new Entry(file, size, created));
+        totalBytes.addAndGet(size - (previous != null ? previous.size : 0));
+    }
+
+    private void delete(String fileName) {
+        Entry entry = entries.remove(fileName);
+        if(entry == null)
+            return;
+        totalBytes.addAndGet(-entry.size);
+        evictions.increment();
+        try {
+            Files.deleteIfExists(entry.file);
+        } catch (IOException ignored) {
+            // indexed again on the next rebuild, and deleted then if it's still outside the bounds
+        }
+    }
+
+    private static class Entry {
+        final Path file;
+        final long size;
+        final long created;
+        volatile long lastAccess;
+        /**
+         * Digest of the contents, computed on first use.
+         */
+        volatile String digest;
+
+        Entry(Path file, long size, long created) {
+            this.file = file;
+            this.size = size;
+            this.created = created;
+            this.lastAccess = created;
+        }
+    }
+}
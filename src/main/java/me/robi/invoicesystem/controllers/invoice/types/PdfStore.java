@@ -0,0 +1,63 @@
+package me.robi.invoicesystem.controllers.invoice.types;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Where the generated PDF files are kept beyond the {@link PdfStorage} of a single node.
+ *
+ * The files are named after the digest of their invoice, see {@link PdfInvoiceType#getFileName(java.util.List)},
+ * so a file of a given name is always the same invoice, no matter which node rendered it. Every node
+ * publishes the files it renders to the store, and fetches the ones it doesn't have from it before
+ * rendering them itself. Files are still served from the local {@link PdfStorage}, the store is only
+ * asked when a node doesn't have a file yet.
+ *
+ * A node claims a file in the store before rendering it, so the other nodes wait for it to be
+ * published instead of rendering the same file at the same time.
+ *
+ * Another store, like an object storage, is used by declaring a PdfStore bean.
+ */
+public interface PdfStore {
+    /**
+     * @param fileName Name of the file
+     * @return {@code true} if the store has the file
+     * @throws IOException If the store can't be reached
+     */
+    boolean contains(String fileName) throws IOException;
+
+    /**
+     * Copies a file of the store to the given path.
+     * @param fileName Name of the file
+     * @param target Path the file is copied to, which doesn't exist yet
+     * @throws java.nio.file.NoSuchFileException If the store doesn't have the file
+     * @throws IOException If the store can't be reached
+     */
+    void fetch(String fileName, Path target) throws IOException;
+
+    /**
+     * Publishes a generated file, replacing nothing if the store already has a file of that name.
+     * @param fileName Name of the file
+     * @param file The complete file
+     * @throws IOException If the store can't be reached
+     */
+    void put(String fileName, Path file) throws IOException;
+
+    /**
+     * Claims the rendering of a file, so the other nodes wait for it instead of rendering it as well.
+     * A store that can't share claims always grants them.
+     * @param fileName Name of the file
+     * @return {@code true} if the file was claimed, {@code false} if another node is rendering it
+     * @throws IOException If the store can't be reached
+     */
+    default boolean claim(String fileName) throws IOException {
+        return true;
+    }
+
+    /**
+     * Releases a claim of {@link #claim(String)}, once the file is published or rendering it failed.
+     * @param fileName Name of the file
+     * @throws IOException If the store can't be reached
+     */
+    default void release(String fileName) throws IOException {
+    }
+}
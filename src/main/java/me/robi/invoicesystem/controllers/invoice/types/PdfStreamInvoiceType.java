@@ -0,0 +1,88 @@
+package me.robi.invoicesystem.controllers.invoice.types;
+
+import com.itextpdf.text.DocumentException;
+import jakarta.servlet.http.HttpServletRequest;
+import me.robi.invoicesystem.controllers.invoice.InvoiceTrace;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import static me.robi.invoicesystem.constants.ResponseConstants.RESPONSE_STATUS;
+
+/**
+ * An Invoice Type that generates a PDF file straight into the response,
+ * without storing it on disk.
+ *
+ * The response has no content length, so it's sent with chunked transfer
+ * as the document is being written.
+ *
+ * The document is rendered through {@link PdfInvoiceType#render(PdfInvoiceType.RenderTask)}, on the same
+ * bounded pool as the stored PDF files if there is one.
+ *
+ * The admission permit is held while the document is written, which is paced by the client.
+ * It's released once the body is written, or once the request completes if the body never is.
+ */
+public class PdfStreamInvoiceType implements InvoiceType {
+    private final PdfInvoiceType pdfInvoiceType;
+
+    /**
+     * @param pdfInvoiceType The PDF Invoice Type whose layout is used
+     */
+    public PdfStreamInvoiceType(PdfInvoiceType pdfInvoiceType) {
+        this.pdfInvoiceType = pdfInvoiceType;
+    }
+
+    @Override
+    public String getName() {
+        return PDF_STREAM_INVOICE;
+    }
+
+    @Override
+    public void warmUp(List<InvoiceLine> lines, long totalSum) throws IOException {
+        pdfInvoiceType.warmUp(lines, totalSum);
+    }
+
+    /**
+     * Streams the PDF file to the client
+     * @param request HttpServletRequest provided by Spring
+     * @param lines Lines of the invoice, one per distinct product
+     * @param totalSum Total sum of the line totals
+     * @return The PDF file, written while it's being generated, or 503 if the render isn't admitted
+     */
+    @Override
+    public ResponseEntity getResponse(HttpServletRequest request, List<InvoiceLine> lines, long totalSum) {
+        PdfAdmissionControl.Permit permit;
+        try {
+            permit = pdfInvoiceType.getAdmissionControl().acquire(request.getRemoteAddr());
+        } catch (PdfAdmissionControl.AdmissionRejectedException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .body(Collections.singletonMap(RESPONSE_STATUS, e.getMessage()));
+        }
+
+        InvoiceTrace.of(request).onComplete(permit::close);
+        StreamingResponseBody body = outputStream -> {
+            try(permit) {
+                pdfInvoiceType.render(() -> {
+                    try {
+                        pdfInvoiceType.generatePdf(lines, totalSum, outputStream);
+                    } catch (DocumentException e) {
+                        throw new IOException(e);
+                    }
+                });
+            }
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_PDF)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.inline().filename(PdfInvoiceType.getFileName(lines)).build().toString())
+                .body(body);
+    }
+}
@@ -0,0 +1,65 @@
+package me.robi.invoicesystem.controllers.invoice.types;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import me.robi.invoicesystem.entities.ProductEntity;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache of the JSON of every product, already encoded as UTF-8,
+ * so the same products aren't serialized again on every invoice.
+ *
+ * A fragment holds the fields of the product followed by a comma, without the surrounding
+ * braces, so the fields of an invoice line can be written right after it into the same object.
+ *
+ * A fragment remembers the name and amount it was serialized from,
+ * and is serialized again once either of them changes.
+ */
+public class ProductJsonFragments {
+    private final ObjectMapper objectMapper;
+    private final int maxSize;
+    private final Map<Long, Fragment> fragments = new ConcurrentHashMap<>();
+
+    /**
+     * @param objectMapper Serializes the products
+     * @param maxSize Maximum amount of cached fragments, the cache is cleared beyond it
+     */
+    public ProductJsonFragments(ObjectMapper objectMapper, int maxSize) {
+        this.objectMapper = objectMapper;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param product The product
+     * @return The JSON fields of the product, to be written with {@link com.fasterxml.jackson.core.JsonGenerator#writeRaw(SerializableString)}
+     *         right after starting an object, and to be followed by at least one more field
+     * @throws JsonProcessingException If the product can't be serialized
+     */
+    public SerializableString get(ProductEntity product) throws JsonProcessingException {
+        Fragment fragment = fragments.get(product.getId());
+        if(fragment != null && fragment.amount == product.getAmount() && Objects.equals(fragment.name, product.getName()))
+            return fragment.json;
+
+        String object = objectMapper.writeValueAsString(product);
+        SerializedString json = new SerializedString(object.substring(1, object.length() - 1) + ",");
+        json.asUnquotedUTF8();
+        if(fragments.size() >= maxSize)
+            fragments.clear();
+        fragments.put(product.getId(), new Fragment(product.getName(), product.getAmount(), json));
+        return json;
+    }
+
+    /**
+     * @return Amount of cached fragments.
+     */
+    public int size() {
+        return fragments.size();
+    }
+
+    private record Fragment(String name, int amount, SerializedString json) {}
+}
@@ -1,34 +1,73 @@
 package me.robi.invoicesystem.controllers.invoice.types;
 
-import jakarta.servlet.http.HttpServletRequest;
-import me.robi.invoicesystem.entities.ProductEntity;
-import org.springframework.http.ResponseEntity;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.MediaType;
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
-import java.util.Map;
 
-import static me.robi.invoicesystem.constants.ResponseConstants.InvoiceResponseConstants.PRODUCTS_LIST;
-import static me.robi.invoicesystem.constants.ResponseConstants.InvoiceResponseConstants.PRODUCTS_SUM;
+import static me.robi.invoicesystem.constants.ResponseConstants.InvoiceResponseConstants.*;
 
 /**
  * A Response Type that doesn't do anything specific when queried
+ *
+ * The JSON is written with a streaming generator out of the cached JSON of every product,
+ * see {@link ProductJsonFragments}, followed by the quantity and the total of its line.
  */
-public class RawInvoiceType implements InvoiceType {
+public class RawInvoiceType extends StreamingInvoiceType {
     /**
-     * Returns raw data of values
-     * @param request HttpServletRequest provided by Spring
-     * @param entities List of all entities
-     * @param totalSum Total sum of the entities amount
-     * @return The raw data
+     * Maximum amount of products whose JSON is cached.
      */
-    @Override
-    public ResponseEntity getResponse(HttpServletRequest request, List<ProductEntity> entities, int totalSum) {
-        Map<String, Object> responseBody = new HashMap<>();
+    public static final int MAX_FRAGMENTS = 100000;
+
+    private final ObjectMapper objectMapper;
+    private final ProductJsonFragments fragments;
+
+    public RawInvoiceType() {
+        this(new ObjectMapper());
+    }
+
+    /**
+     * @param objectMapper Serializes the products, the same one used for all other responses
+     */
+    public RawInvoiceType(ObjectMapper objectMapper) {
+        super(RAW_INVOICE, MediaType.APPLICATION_JSON);
+        this.objectMapper = objectMapper;
+        this.fragments = new ProductJsonFragments(objectMapper, MAX_FRAGMENTS);
+    }
 
-        responseBody.put(PRODUCTS_LIST, entities);
-        responseBody.put(PRODUCTS_SUM, totalSum);
+    /**
+     * Writes the invoice as JSON, an object of the {@link me.robi.invoicesystem.constants.ResponseConstants.InvoiceResponseConstants#PRODUCTS_LIST}
+     * and the {@link me.robi.invoicesystem.constants.ResponseConstants.InvoiceResponseConstants#PRODUCTS_SUM}.
+     * @param lines Lines of the invoice, one per distinct product
+     * @param totalSum Total sum of the line totals
+     * @param outputStream The OutputStream to write into
+     * @throws IOException If writing fails
+     */
+    @Override
+    public void write(List<InvoiceLine> lines, long totalSum, OutputStream outputStream) throws IOException {
+        try(JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart(PRODUCTS_LIST);
+            for(InvoiceLine line : lines) {
+                generator.writeStartObject();
+                generator.writeRaw(fragments.get(line.getProduct()));
+                generator.writeNumberField(QUANTITY, line.getQuantity());
+                generator.writeNumberField(LINE_TOTAL, line.getLineTotal());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeNumberField(PRODUCTS_SUM, totalSum);
+            generator.writeEndObject();
+        }
+    }
 
-        return ResponseEntity.ok(responseBody);
+    /**
+     * @return The cached JSON of the products.
+     */
+    public ProductJsonFragments getFragments() {
+        return fragments;
     }
 }
@@ -0,0 +1,119 @@
+package me.robi.invoicesystem.controllers.invoice.types;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Keeps the generated files in a directory shared by all nodes, like an NFS mount.
+ *
+ * The files are laid out like in the {@link PdfStorage}, and are copied into a temporary
+ * file first and moved into place once complete, so another node never fetches a
+ * half-written file. Nothing is ever deleted, the retention of the directory is up to its owner.
+ *
+ * A node claims a file by creating a marker file in {@link #CLAIM_DIRECTORY}, which only one node can create.
+ * A marker older than the claim timeout is left behind by a node that died while rendering, and is taken over.
+ */
+public class SharedDirectoryPdfStore implements PdfStore {
+    /**
+     * Directory inside the shared directory that holds the claims of files being rendered.
+     */
+    public static final String CLAIM_DIRECTORY = ".claims";
+    /**
+     * Claims older than this are taken over by another node.
+     */
+    public static final Duration DEFAULT_CLAIM_TIMEOUT = Duration.ofMinutes(1);
+
+    private final Path directory;
+    private final Path tempDirectory;
+    private final Path claimDirectory;
+    private final long claimTimeoutMillis;
+
+    /**
+     * @param directory The shared directory
+     * @param claimTimeout Claims older than this are taken over by another node
+     */
+    public SharedDirectoryPdfStore(Path directory, Duration claimTimeout) {
+        this.directory = directory;
+        this.tempDirectory = directory.resolve(PdfStorage.TEMP_DIRECTORY);
+        this.claimDirectory = directory.resolve(CLAIM_DIRECTORY);
+        this.claimTimeoutMillis = claimTimeout.toMillis();
+    }
+
+    /**
+     * @param directory The shared directory
+     */
+    public SharedDirectoryPdfStore(Path directory) {
+        this(directory, DEFAULT_CLAIM_TIMEOUT);
+    }
+
+    @Override
+    public boolean contains(String fileName) {
+        return Files.isRegularFile(PdfStorage.resolve(directory, fileName));
+    }
+
+    @Override
+    public void fetch(String fileName, Path target) throws IOException {
+        Files.copy(PdfStorage.resolve(directory, fileName), target, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Override
+    public void put(String fileName, Path file) throws IOException {
+        Path target = PdfStorage.resolve(directory, fileName);
+        if(Files.exists(target))
+            return;
+
+        Files.createDirectories(tempDirectory);
+        Path temp = tempDirectory.resolve(fileName + "." + UUID.randomUUID() + ".tmp");
+        try {
+            Files.copy(file, temp);
+            Files.createDirectories(target.getParent());
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public boolean claim(String fileName) throws IOException {
+        Path claim = claimDirectory.resolve(fileName + ".claim");
+        Files.createDirectories(claimDirectory);
+        try {
+            Files.createFile(claim);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            try {
+                if(System.currentTimeMillis() - Files.getLastModifiedTime(claim).toMillis() < claimTimeoutMillis)
+                    return false;
+            } catch (NoSuchFileException released) {
+                // released in the meantime
+            }
+        }
+
+        // released or stale, nodes taking over the same stale claim at once may both render the file
+        Files.deleteIfExists(claim);
+        try {
+            Files.createFile(claim);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void release(String fileName) throws IOException {
+        Files.deleteIfExists(claimDirectory.resolve(fileName + ".claim"));
+    }
+
+    /**
+     * @return The shared directory.
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+}
@@ -0,0 +1,91 @@
+package me.robi.invoicesystem.controllers.invoice.types;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * Base of the Invoice Types that write the invoice in a data format of their own.
+ *
+ * Invoices of at least {@link #STREAM_LINES} lines are streamed to the client
+ * as they're written, smaller ones are sent at once with a content length.
+ */
+public abstract class StreamingInvoiceType implements InvoiceType {
+    /**
+     * Invoices with at least this many lines are streamed, without a content length.
+     */
+    public static final int STREAM_LINES = 1000;
+
+    private final String name;
+    private final MediaType mediaType;
+
+    /**
+     * @param name Identifier of the type
+     * @param mediaType Content type of the written invoices
+     */
+    protected StreamingInvoiceType(String name, MediaType mediaType) {
+        this.name = name;
+        this.mediaType = mediaType;
+    }
+
+    /**
+     * Writes the invoice
+     * @param request HttpServletRequest provided by Spring
+     * @param lines Lines of the invoice, one per distinct product
+     * @param totalSum Total sum of the line totals
+     * @return The written invoice
+     */
+    @Override
+    public ResponseEntity getResponse(HttpServletRequest request, List<InvoiceLine> lines, long totalSum) {
+        if(lines.size() >= STREAM_LINES)
+            return ResponseEntity.ok()
+                    .contentType(mediaType)
+                    .body((StreamingResponseBody) outputStream -> write(lines, totalSum, outputStream));
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(64 + lines.size() * 96);
+        try {
+            write(lines, totalSum, outputStream);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return ResponseEntity.ok()
+                .contentType(mediaType)
+                .body(outputStream.toByteArray());
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Writes the invoice into a discarding OutputStream.
+     */
+    @Override
+    public void warmUp(List<InvoiceLine> lines, long totalSum) throws IOException {
+        write(lines, totalSum, OutputStream.nullOutputStream());
+    }
+
+    /**
+     * @return Content type of the written invoices.
+     */
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * Writes the invoice into an OutputStream
+     * @param lines Lines of the invoice, one per distinct product
+     * @param totalSum Total sum of the line totals
+     * @param outputStream The OutputStream to write into
+     * @throws IOException If writing fails
+     */
+    public abstract void write(List<InvoiceLine> lines, long totalSum, OutputStream outputStream) throws IOException;
+}
@@ -1,16 +1,26 @@
 package me.robi.invoicesystem.entities;
 
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
 
 import java.util.Objects;
 
 @Entity
+@EntityListeners(ProductEntityListener.class)
 public class ProductEntity {
+    /**
+     * IDs are taken from the sequence in blocks of this many, so inserting
+     * a batch of products doesn't ask the database for every single ID.
+     */
+    public static final int ID_ALLOCATION_SIZE = 500;
+
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "product_sequence")
+    @SequenceGenerator(name = "product_sequence", sequenceName = "product_sequence", allocationSize = ID_ALLOCATION_SIZE)
     private long id;
 
     private String name;
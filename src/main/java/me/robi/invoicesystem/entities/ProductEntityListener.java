@@ -0,0 +1,69 @@
+package me.robi.invoicesystem.entities;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import me.robi.invoicesystem.repositories.ProductCatalog;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+
+/**
+ * Keeps the {@link ProductCatalog} in sync with the database,
+ * invalidating a product whenever it's saved or deleted.
+ *
+ * The product is invalidated again once the transaction completes, so a lookup
+ * that reads the old row before the commit can't leave a stale entry behind.
+ *
+ * Bulk changes can collect the changed IDs instead, and invalidate them all at once after committing.
+ */
+public class ProductEntityListener {
+    private static final ThreadLocal<Collection<Long>> collectedIds = new ThreadLocal<>();
+
+    @Autowired
+    private ObjectProvider<ProductCatalog> productCatalog;
+
+    /**
+     * Adds the IDs of products changed on the current thread to the given collection,
+     * instead of invalidating them, until {@link #stopCollecting()} is called.
+     * @param ids Collection the changed IDs are added to
+     */
+    public static void collectChanges(Collection<Long> ids) {
+        collectedIds.set(ids);
+    }
+
+    /**
+     * Invalidates changed products on the current thread again.
+     */
+    public static void stopCollecting() {
+        collectedIds.remove();
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onChange(ProductEntity entity) {
+        Collection<Long> collected = collectedIds.get();
+        if(collected != null) {
+            collected.add(entity.getId());
+            return;
+        }
+
+        ProductCatalog catalog = productCatalog == null ? null : productCatalog.getIfAvailable();
+        if(catalog == null)
+            return;
+
+        long id = entity.getId();
+        catalog.invalidate(id);
+        if(TransactionSynchronizationManager.isSynchronizationActive())
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    catalog.invalidate(id);
+                }
+            });
+    }
+}
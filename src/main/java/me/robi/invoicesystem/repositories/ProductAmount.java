@@ -0,0 +1,16 @@
+package me.robi.invoicesystem.repositories;
+
+/**
+ * Projection of the ID and amount of a product, without loading the entity.
+ */
+public interface ProductAmount {
+    /**
+     * @return ID of the product.
+     */
+    long getId();
+
+    /**
+     * @return Amount of the product.
+     */
+    int getAmount();
+}
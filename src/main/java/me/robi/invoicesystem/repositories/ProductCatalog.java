@@ -0,0 +1,515 @@
+package me.robi.invoicesystem.repositories;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import me.robi.invoicesystem.entities.ProductEntity;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import static me.robi.invoicesystem.constants.MetricConstants.*;
+
+/**
+ * Read-through cache in front of {@link ProductRepository}.
+ *
+ * Products are held in an immutable snapshot of sorted primitive IDs, which
+ * is looked up without any locking. Writes build a new snapshot and publish it
+ * (copy-on-write), which is fine since products rarely change.
+ *
+ * Every change to a {@link ProductEntity} bumps the catalog version, which
+ * is used to discard lookups that were loaded before the change happened.
+ * The IDs of the most recent changes are kept in a change log, so clients
+ * can sync only the products that changed since the version they know.
+ */
+@Component
+public class ProductCatalog {
+    /**
+     * Maximum amount of IDs sent to the repository in a single lookup,
+     * keeps the generated {@code IN} clause at a reasonable size.
+     */
+    public static final int LOOKUP_CHUNK_SIZE = 1000;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry = Metrics.globalRegistry;
+
+    /**
+     * Maximum amount of products held in memory. Least recently accessed
+     * products are evicted first.
+     */
+    @Value("${invoice.catalog.max-size:100000}")
+    private int maxSize;
+    /**
+     * Maximum amount of changes remembered in the change log, clients that
+     * fall further behind have to sync the whole catalog.
+     */
+    @Value("${invoice.catalog.change-log-size:10000}")
+    private int changeLogSize;
+
+    /**
+     * Starts at the time of startup, so versions handed out before a restart are always older
+     * than the change log and never mistaken for a version of this run.
+     */
+    private final AtomicLong version = new AtomicLong(System.currentTimeMillis());
+    private final ConcurrentSkipListMap<Long, Long> changes = new ConcurrentSkipListMap<>();
+    private int changeCount;
+    /**
+     * The change log holds every change after this version.
+     */
+    private volatile long changesAfter = version.get();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    @PostConstruct
+    public void registerMetrics() {
+        Gauge.builder(CATALOG_SIZE, this, ProductCatalog::size).register(meterRegistry);
+        FunctionCounter.builder(CATALOG_HITS, this, ProductCatalog::getHitCount).register(meterRegistry);
+        FunctionCounter.builder(CATALOG_MISSES, this, ProductCatalog::getMissCount).register(meterRegistry);
+    }
+
+    /**
+     * Lists all products, served from memory if the whole catalog
+     * has been loaded before and fits into {@link #maxSize}.
+     * @return List of all products, ordered by their ID
+     */
+    public List<ProductEntity> findAll() {
+        Snapshot snapshot = this.snapshot;
+        if(snapshot.complete) {
+            hits.increment();
+            return snapshot.asList();
+        }
+        misses.increment();
+
+        long expectedVersion = version.get();
+        List<ProductEntity> products = new ArrayList<>();
+        lookupTimer("findAll").record(() -> productRepository.findAll().forEach(products::add));
+        if(products.size() <= maxSize)
+            replace(products, expectedVersion);
+        return products;
+    }
+
+    /**
+     * Returns a page of products using keyset pagination,
+     * served from memory if the whole catalog is cached.
+     * @param after Only products with a higher ID than this are returned
+     * @param limit Maximum amount of products in the page
+     * @return List of products ordered by their ID
+     */
+    public List<ProductEntity> findPage(long after, int limit) {
+        Snapshot snapshot = this.snapshot;
+        if(!snapshot.complete) {
+            misses.increment();
+            return lookupTimer("findPage").record(() -> productRepository.findByIdGreaterThanOrderByIdAsc(after, PageRequest.of(0, limit)));
+        }
+        hits.increment();
+
+        int index = snapshot.indexOf(after);
+        int from = index >= 0 ? index + 1 : -index - 1;
+        int to = (int) Math.min((long) from + limit, snapshot.ids.length);
+        return snapshot.asList().subList(from, to);
+    }
+
+    /**
+     * Goes through every product ordered by its ID, without holding the whole
+     * catalog in memory if it isn't cached already.
+     * @param action Called for every product
+     */
+    public void forEach(Consumer<ProductEntity> action) {
+        Snapshot snapshot = this.snapshot;
+        if(!snapshot.complete) {
+            misses.increment();
+            lookupTimer("streamAll").record(() -> productRepository.streamAll(action));
+            return;
+        }
+        hits.increment();
+        for(ProductEntity product : snapshot.products)
+            action.accept(product);
+    }
+
+    /**
+     * Looks up products by their ID, loading the ones that aren't
+     * cached yet from the repository in chunks of {@link #LOOKUP_CHUNK_SIZE}.
+     * @param ids Array of IDs, may contain duplicates
+     * @return Array of the same length as {@param ids}, containing the product for each ID, or {@code null} if it doesn't exist.
+     */
+    public ProductEntity[] getProducts(long[] ids) {
+        long expectedVersion = version.get();
+        Snapshot snapshot = this.snapshot;
+        ProductEntity[] products = new ProductEntity[ids.length];
+        Set<Long> missingIds = null;
+
+        long now = System.nanoTime();
+        for(int i = 0; i < ids.length; i++) {
+            int index = snapshot.indexOf(ids[i]);
+            if(index >= 0) {
+                products[i] = snapshot.products[index];
+                snapshot.lastAccess[index] = now;
+            } else {
+                if(missingIds == null)
+                    missingIds = new LinkedHashSet<>();
+                missingIds.add(ids[i]);
+            }
+        }
+
+        if(missingIds == null) {
+            hits.add(ids.length);
+            return products;
+        }
+
+        Map<Long, ProductEntity> loaded = load(missingIds);
+        int missCount = 0;
+        for(int i = 0; i < ids.length; i++) {
+            if(products[i] == null) {
+                products[i] = loaded.get(ids[i]);
+                missCount++;
+            }
+        }
+        hits.add(ids.length - missCount);
+        misses.add(missCount);
+
+        if(!loaded.isEmpty())
+            merge(loaded.values(), expectedVersion);
+        return products;
+    }
+
+    /**
+     * Counts the lines of an invoice and sums their amounts, without loading any products.
+     * Served from memory if every product is cached, otherwise only the ID and amount of
+     * the products are read from the database, a single query for every chunk of IDs.
+     * @param quantities Quantity of every product of the invoice
+     * @return The totals of the invoice, and the IDs that don't exist
+     * @throws ArithmeticException If the sum doesn't fit into a long
+     */
+    public Summary summarize(ProductQuantities quantities) {
+        Snapshot snapshot = this.snapshot;
+        long total = 0;
+        int cached = 0;
+        for(; cached < quantities.size(); cached++) {
+            int index = snapshot.indexOf(quantities.getId(cached));
+            if(index < 0)
+                break;
+            total = Math.addExact(total, Math.multiplyExact(snapshot.products[index].getAmount(), quantities.getQuantity(cached)));
+        }
+        if(cached == quantities.size()) {
+            hits.add(quantities.size());
+            return new Summary(quantities.getTotalQuantity(), total, Collections.emptySet());
+        }
+        misses.add(quantities.size());
+
+        total = 0;
+        Set<Long> missingIds = new HashSet<>();
+        Timer timer = lookupTimer("findAmountsById");
+        for(int from = 0; from < quantities.size(); from += LOOKUP_CHUNK_SIZE) {
+            int to = Math.min(from + LOOKUP_CHUNK_SIZE, quantities.size());
+            Map<Long, Long> chunk = new HashMap<>((to - from) * 4 / 3 + 1);
+            for(int i = from; i < to; i++)
+                chunk.put(quantities.getId(i), quantities.getQuantity(i));
+
+            List<ProductAmount> amounts = timer.record(() -> productRepository.findAmountsByIdIn(chunk.keySet()));
+            for(ProductAmount amount : amounts)
+                total = Math.addExact(total, Math.multiplyExact(amount.getAmount(), chunk.remove(amount.getId())));
+            // whatever is left wasn't found
+            missingIds.addAll(chunk.keySet());
+        }
+
+        if(missingIds.isEmpty())
+            return new Summary(quantities.getTotalQuantity(), total, Collections.emptySet());
+        Set<Long> orderedMissingIds = new LinkedHashSet<>();
+        for(int i = 0; i < quantities.size(); i++)
+            if(missingIds.contains(quantities.getId(i)))
+                orderedMissingIds.add(quantities.getId(i));
+        return new Summary(quantities.getTotalQuantity(), total, orderedMissingIds);
+    }
+
+    /**
+     * Removes a product from the cache, bumps the catalog version and records the change in the change log.
+     * Called whenever a {@link ProductEntity} is saved or deleted.
+     * @param id ID of the changed product
+     */
+    public synchronized void invalidate(long id) {
+        recordChange(id);
+        Snapshot snapshot = this.snapshot;
+        int index = snapshot.indexOf(id);
+        if(index < 0) {
+            if(snapshot.complete)
+                this.snapshot = snapshot.withComplete(false);
+            return;
+        }
+
+        int size = snapshot.ids.length - 1;
+        long[] ids = new long[size];
+        ProductEntity[] products = new ProductEntity[size];
+        long[] lastAccess = new long[size];
+        System.arraycopy(snapshot.ids, 0, ids, 0, index);
+        System.arraycopy(snapshot.ids, index + 1, ids, index, size - index);
+        System.arraycopy(snapshot.products, 0, products, 0, index);
+        System.arraycopy(snapshot.products, index + 1, products, index, size - index);
+        System.arraycopy(snapshot.lastAccess, 0, lastAccess, 0, index);
+        System.arraycopy(snapshot.lastAccess, index + 1, lastAccess, index, size - index);
+        this.snapshot = new Snapshot(ids, products, lastAccess, false);
+    }
+
+    /**
+     * Invalidates many products at once, see {@link #invalidate(long)}.
+     * @param ids IDs of the changed products
+     */
+    public synchronized void invalidate(Collection<Long> ids) {
+        for(long id : ids) {
+            if(snapshot.indexOf(id) >= 0)
+                invalidate(id);
+            else recordChange(id);
+        }
+        if(snapshot.complete)
+            snapshot = snapshot.withComplete(false);
+    }
+
+    /**
+     * Bumps the catalog version and adds the change to the change log, trimming its oldest change if it's full.
+     */
+    private void recordChange(long id) {
+        changes.put(version.incrementAndGet(), id);
+        if(++changeCount > changeLogSize) {
+            changesAfter = changes.pollFirstEntry().getKey();
+            changeCount--;
+        }
+    }
+
+    /**
+     * Drops every cached product and bumps the catalog version.
+     */
+    public synchronized void invalidateAll() {
+        changes.clear();
+        changeCount = 0;
+        changesAfter = version.incrementAndGet();
+        snapshot = Snapshot.EMPTY;
+    }
+
+    /**
+     * Lists the products that changed after the given version, from the change log.
+     * @param since A version returned by {@link #getVersion()}
+     * @return IDs of the changed products, which may have been deleted since. {@code null} if
+     * the change log doesn't reach back to that version, or it's not a version of this catalog.
+     */
+    public Set<Long> getChangedIds(long since) {
+        if(since < changesAfter || since > version.get())
+            return null;
+        Set<Long> changedIds = new LinkedHashSet<>(changes.tailMap(since, false).values());
+        // the log may have been trimmed past the version while reading it
+        return since < changesAfter ? null : changedIds;
+    }
+
+    /**
+     * @return The catalog version, increased on every change to a product.
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * @return Amount of products currently held in memory.
+     */
+    public int size() {
+        return snapshot.ids.length;
+    }
+
+    /**
+     * @return Amount of lookups that were served from memory.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return Amount of lookups that had to go to the repository.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    private Map<Long, ProductEntity> load(Collection<Long> ids) {
+        Map<Long, ProductEntity> products = new HashMap<>(ids.size() * 4 / 3 + 1);
+        List<Long> chunk = new ArrayList<>(Math.min(ids.size(), LOOKUP_CHUNK_SIZE));
+        Timer timer = lookupTimer("findAllById");
+        for(Long l : ids) {
+            chunk.add(l);
+            if(chunk.size() == LOOKUP_CHUNK_SIZE) {
+                timer.record(() -> productRepository.findAllById(chunk).forEach(product -> products.put(product.getId(), product)));
+                chunk.clear();
+            }
+        }
+        if(!chunk.isEmpty())
+            timer.record(() -> productRepository.findAllById(chunk).forEach(product -> products.put(product.getId(), product)));
+        return products;
+    }
+
+    /**
+     * @param operation Name of the repository query
+     * @return Timer measuring the latency of the query
+     */
+    private Timer lookupTimer(String operation) {
+        return meterRegistry.timer(PRODUCT_LOOKUP, TAG_OPERATION, operation);
+    }
+
+    /**
+     * Replaces the whole snapshot with a complete list of products.
+     */
+    private synchronized void replace(List<ProductEntity> products, long expectedVersion) {
+        if(version.get() != expectedVersion)
+            return;
+        List<ProductEntity> sorted = new ArrayList<>(products);
+        sorted.sort(Comparator.comparingLong(ProductEntity::getId));
+
+        long now = System.nanoTime();
+        long[] ids = new long[sorted.size()];
+        long[] lastAccess = new long[sorted.size()];
+        for(int i = 0; i < ids.length; i++) {
+            ids[i] = sorted.get(i).getId();
+            lastAccess[i] = now;
+        }
+        snapshot = new Snapshot(ids, sorted.toArray(new ProductEntity[0]), lastAccess, true);
+    }
+
+    /**
+     * Merges freshly loaded products into the snapshot, evicting the least
+     * recently accessed ones if it grows above {@link #maxSize}.
+     */
+    private synchronized void merge(Collection<ProductEntity> loaded, long expectedVersion) {
+        if(version.get() != expectedVersion)
+            return;
+        Snapshot snapshot = this.snapshot;
+        List<ProductEntity> added = new ArrayList<>(loaded);
+        added.sort(Comparator.comparingLong(ProductEntity::getId));
+
+        long now = System.nanoTime();
+        int capacity = snapshot.ids.length + added.size();
+        long[] ids = new long[capacity];
+        ProductEntity[] products = new ProductEntity[capacity];
+        long[] lastAccess = new long[capacity];
+
+        int size = 0, i = 0, j = 0;
+        while(i < snapshot.ids.length || j < added.size()) {
+            long existingId = i < snapshot.ids.length ? snapshot.ids[i] : Long.MAX_VALUE;
+            long addedId = j < added.size() ? added.get(j).getId() : Long.MAX_VALUE;
+            if(j >= added.size() || (i < snapshot.ids.length && existingId < addedId)) {
+                ids[size] = existingId;
+                products[size] = snapshot.products[i];
+                lastAccess[size++] = snapshot.lastAccess[i++];
+            } else {
+                if(existingId == addedId)
+                    i++;
+                ids[size] = addedId;
+                products[size] = added.get(j++);
+                lastAccess[size++] = now;
+            }
+        }
+
+        boolean complete = snapshot.complete;
+        if(size > maxSize) {
+            long threshold = evictionThreshold(lastAccess, size);
+            int kept = 0;
+            for(int k = 0; k < size && kept < maxSize; k++) {
+                if(lastAccess[k] < threshold)
+                    continue;
+                ids[kept] = ids[k];
+                products[kept] = products[k];
+                lastAccess[kept++] = lastAccess[k];
+            }
+            size = kept;
+            complete = false;
+        }
+
+        this.snapshot = new Snapshot(Arrays.copyOf(ids, size), Arrays.copyOf(products, size), Arrays.copyOf(lastAccess, size), complete);
+    }
+
+    /**
+     * @return The lowest access time that still fits into {@link #maxSize}.
+     */
+    private long evictionThreshold(long[] lastAccess, int size) {
+        long[] sorted = Arrays.copyOf(lastAccess, size);
+        Arrays.sort(sorted);
+        return sorted[size - maxSize];
+    }
+
+    /**
+     * The totals of an invoice, see {@link #summarize(ProductQuantities)}.
+     */
+    public static class Summary {
+        private final long lineCount;
+        private final long amountSum;
+        private final Set<Long> missingIds;
+
+        private Summary(long lineCount, long amountSum, Set<Long> missingIds) {
+            this.lineCount = lineCount;
+            this.amountSum = amountSum;
+            this.missingIds = missingIds;
+        }
+
+        /**
+         * @return Amount of lines, the sum of the quantities of every product.
+         */
+        public long getLineCount() {
+            return lineCount;
+        }
+
+        /**
+         * @return Sum of the amounts of every line.
+         */
+        public long getAmountSum() {
+            return amountSum;
+        }
+
+        /**
+         * @return IDs that don't exist, in the order they were first given. The totals are incomplete if any are missing.
+         */
+        public Set<Long> getMissingIds() {
+            return missingIds;
+        }
+    }
+
+    /**
+     * An immutable view of the cached products, sorted by ID.
+     * Only {@link #lastAccess} is written to after publishing, racy updates
+     * to it are acceptable since it's only used to pick eviction candidates.
+     */
+    private static class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(new long[0], new ProductEntity[0], new long[0], false);
+
+        final long[] ids;
+        final ProductEntity[] products;
+        final long[] lastAccess;
+        final boolean complete;
+
+        Snapshot(long[] ids, ProductEntity[] products, long[] lastAccess, boolean complete) {
+            this.ids = ids;
+            this.products = products;
+            this.lastAccess = lastAccess;
+            this.complete = complete;
+        }
+
+        int indexOf(long id) {
+            return Arrays.binarySearch(ids, id);
+        }
+
+        Snapshot withComplete(boolean complete) {
+            return new Snapshot(ids, products, lastAccess, complete);
+        }
+
+        List<ProductEntity> asList() {
+            return Collections.unmodifiableList(Arrays.asList(products));
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package me.robi.invoicesystem.repositories;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.PersistenceException;
+import me.robi.invoicesystem.entities.ProductEntity;
+import me.robi.invoicesystem.entities.ProductEntityListener;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Imports products from an upload, reading one row at a time so the upload
+ * is never held in memory as a whole.
+ *
+ * Rows are parsed in chunks of {@link #chunkSize} rows, and every chunk is inserted in its own transaction
+ * in JDBC batches of {@code hibernate.jdbc.batch_size}. A transaction is never open while the upload is read,
+ * so a slow client doesn't hold a database connection. A failing row rolls back only its own chunk,
+ * the chunks before it stay imported.
+ * The {@link ProductCatalog} is invalidated once per chunk rather than for every single row.
+ */
+@Component
+public class ProductImporter {
+    /**
+     * Size of the buffer the upload is read through.
+     */
+    public static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Thrown when a row of the upload can't be imported.
+     */
+    public static class ImportException extends IllegalArgumentException {
+        private final long importedRows;
+
+        public ImportException(String message, long importedRows) {
+            super(message);
+            this.importedRows = importedRows;
+        }
+
+        /**
+         * @return Amount of rows committed before the failing chunk
+         */
+        public long getImportedRows() {
+            return importedRows;
+        }
+    }
+
+    /**
+     * The outcome of an import.
+     */
+    public static class Result {
+        private final long rows;
+        private final long nanos;
+
+        private Result(long rows, long nanos) {
+            this.rows = rows;
+            this.nanos = nanos;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getMillis() {
+            return nanos / 1_000_000;
+        }
+
+        public long getRowsPerSecond() {
+            return nanos == 0 ? rows : rows * 1_000_000_000L / nanos;
+        }
+    }
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ProductCatalog productCatalog;
+
+    /**
+     * Rows committed in a single transaction.
+     */
+    @Value("${invoice.import.chunk-size:10000}")
+    private int chunkSize;
+
+    /**
+     * Rows sent to the database at once, the persistence context is flushed and cleared after each batch.
+     */
+    @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:500}")
+    private int batchSize;
+
+    /**
+     * Imports a CSV upload. The first line is a header naming the {@code name} and {@code amount}
+     * columns, in any order, other columns such as {@code id} are ignored.
+     * @param inputStream The upload, encoded in UTF-8
+     * @return Amount of imported rows and how long it took
+     * @throws ImportException If a row is malformed
+     * @throws IOException If reading the upload fails
+     */
+    public Result importCsv(InputStream inputStream) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8), READ_BUFFER_SIZE);
+        return importRows(new CsvRows(reader));
+    }
+
+    /**
+     * Imports a newline delimited JSON upload, an object with a {@code name} and an {@code amount} per line.
+     * @param inputStream The upload
+     * @return Amount of imported rows and how long it took
+     * @throws ImportException If a row is malformed
+     * @throws IOException If reading the upload fails
+     */
+    public Result importNdjson(InputStream inputStream) throws IOException {
+        MappingIterator<ImportRow> iterator = objectMapper.readerFor(ImportRow.class).readValues(inputStream);
+        return importRows(new JsonRows(iterator));
+    }
+
+    private Result importRows(Rows rows) throws IOException {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        long start = System.nanoTime();
+        long imported = 0;
+        boolean more = true;
+        while(more) {
+            List<ProductEntity> chunk = new ArrayList<>(chunkSize);
+            try {
+                ProductEntity product;
+                while(chunk.size() < chunkSize && (product = rows.next()) != null)
+                    chunk.add(product);
+            } catch (IllegalArgumentException e) {
+                throw new ImportException(String.format("Line %s: %s", rows.getLine(), e.getMessage()), imported);
+            }
+            more = chunk.size() == chunkSize;
+            if(chunk.isEmpty())
+                break;
+
+            List<Long> changedIds = new ArrayList<>();
+            ProductEntityListener.collectChanges(changedIds);
+            try {
+                transaction.executeWithoutResult(status -> {
+                    for(int i = 0; i < chunk.size(); i++) {
+                        entityManager.persist(chunk.get(i));
+                        if((i + 1) % batchSize == 0) {
+                            entityManager.flush();
+                            entityManager.clear();
+                        }
+                    }
+                });
+            } catch (PersistenceException | DataAccessException e) {
+                // failures of the last batch only surface on commit, translated by Spring
+                throw new ImportException(String.format("Rows up to line %s: %s", rows.getLine(), e.getMessage()), imported);
+            } finally {
+                ProductEntityListener.stopCollecting();
+            }
+            productCatalog.invalidate(changedIds);
+            imported += chunk.size();
+        }
+        return new Result(imported, System.nanoTime() - start);
+    }
+
+    /**
+     * A source of rows to import.
+     */
+    private interface Rows {
+        /**
+         * @return The next product, or {@code null} at the end of the upload
+         * @throws IllegalArgumentException If the row is malformed
+         */
+        ProductEntity next() throws IOException;
+
+        /**
+         * @return Line of the upload that was read last.
+         */
+        long getLine();
+    }
+
+    private record ImportRow(String name, Integer amount) {}
+
+    private static class JsonRows implements Rows {
+        private final MappingIterator<ImportRow> iterator;
+
+        JsonRows(MappingIterator<ImportRow> iterator) {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public ProductEntity next() throws IOException {
+            ImportRow row;
+            try {
+                if(!iterator.hasNextValue())
+                    return null;
+                row = iterator.nextValue();
+            } catch (JsonProcessingException e) {
+                throw new IllegalArgumentException(e.getOriginalMessage());
+            }
+            if(row.name() == null || row.amount() == null)
+                throw new IllegalArgumentException("Both name and amount are required.");
+            return new ProductEntity(row.name(), row.amount());
+        }
+
+        @Override
+        public long getLine() {
+            return iterator.getCurrentLocation().getLineNr();
+        }
+    }
+
+    private static class CsvRows implements Rows {
+        private final BufferedReader reader;
+        private long line;
+        private int nameColumn = -1;
+        private int amountColumn = -1;
+
+        CsvRows(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public ProductEntity next() throws IOException {
+            if(nameColumn < 0)
+                readHeader();
+
+            List<String> fields;
+            do {
+                fields = readRecord();
+                if(fields == null)
+                    return null;
+            } while(fields.size() == 1 && fields.get(0).isEmpty());
+
+            if(fields.size() <= Math.max(nameColumn, amountColumn))
+                throw new IllegalArgumentException(String.format("Expected at least %s columns.", Math.max(nameColumn, amountColumn) + 1));
+            String amount = fields.get(amountColumn).trim();
+            try {
+                return new ProductEntity(fields.get(nameColumn), Integer.parseInt(amount));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(String.format("Amount %s is not a number.", amount));
+            }
+        }
+
+        @Override
+        public long getLine() {
+            return line;
+        }
+
+        private void readHeader() throws IOException {
+            List<String> header = readRecord();
+            if(header == null)
+                throw new IllegalArgumentException("The header is missing.");
+            for(int i = 0; i < header.size(); i++) {
+                String column = header.get(i).trim().toLowerCase(Locale.ROOT);
+                if(column.equals("name"))
+                    nameColumn = i;
+                else if(column.equals("amount"))
+                    amountColumn = i;
+            }
+            if(nameColumn < 0 || amountColumn < 0)
+                throw new IllegalArgumentException("The header has to name a name and an amount column.");
+        }
+
+        /**
+         * Reads the fields of the next record, following RFC 4180 quoting.
+         * @return The fields, or {@code null} at the end of the upload
+         */
+        private List<String> readRecord() throws IOException {
+            String text = reader.readLine();
+            if(text == null)
+                return null;
+            line++;
+
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            int i = 0;
+            while(true) {
+                if(i == text.length()) {
+                    if(!quoted)
+                        break;
+                    // a quoted field continues on the next line
+                    text = reader.readLine();
+                    if(text == null)
+                        throw new IllegalArgumentException("A quoted field is never closed.");
+                    line++;
+                    field.append('\n');
+                    i = 0;
+                    continue;
+                }
+                char c = text.charAt(i++);
+                if(quoted) {
+                    if(c != '"')
+                        field.append(c);
+                    else if(i < text.length() && text.charAt(i) == '"') {
+                        field.append('"');
+                        i++;
+                    } else quoted = false;
+                } else if(c == '"')
+                    quoted = true;
+                else if(c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else field.append(c);
+            }
+            fields.add(field.toString());
+            return fields;
+        }
+    }
+}
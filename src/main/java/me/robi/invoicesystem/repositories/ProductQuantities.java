@@ -0,0 +1,133 @@
+package me.robi.invoicesystem.repositories;
+
+import java.util.Arrays;
+
+/**
+ * The quantity of every product of an invoice, in the order the products first appear.
+ *
+ * A primitive open-addressing hash table from ID to quantity, so repeated IDs are
+ * counted without boxing a single ID. Resolving the invoice then only takes a lookup
+ * per distinct product, no matter how many times it appears.
+ */
+public class ProductQuantities {
+    private long[] ids;
+    private long[] quantities;
+    /**
+     * Index of every entry plus one, at the slot of its hash. Empty slots are zero.
+     */
+    private int[] slots;
+    private int size;
+    private long totalQuantity;
+
+    public ProductQuantities() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize Amount of distinct products expected, the table grows beyond it
+     */
+    public ProductQuantities(int expectedSize) {
+        int capacity = Math.max(8, expectedSize);
+        ids = new long[capacity];
+        quantities = new long[capacity];
+        slots = new int[Integer.highestOneBit(capacity - 1) << 2];
+    }
+
+    /**
+     * @param ids Array of IDs, may contain duplicates
+     * @return The quantities of the given IDs, every occurrence counting once
+     */
+    public static ProductQuantities of(long... ids) {
+        ProductQuantities quantities = new ProductQuantities(ids.length);
+        for(long id : ids)
+            quantities.add(id, 1);
+        return quantities;
+    }
+
+    /**
+     * Adds to the quantity of a product.
+     * @param id ID of the product
+     * @param quantity Quantity to add, at least 1
+     * @throws IllegalArgumentException If the quantity isn't positive
+     */
+    public void add(long id, long quantity) {
+        if(quantity < 1)
+            throw new IllegalArgumentException(String.format("Quantity of product %s must be at least 1.", id));
+        totalQuantity = Math.addExact(totalQuantity, quantity);
+
+        int mask = slots.length - 1;
+        int slot = hash(id) & mask;
+        while(slots[slot] != 0) {
+            int index = slots[slot] - 1;
+            if(ids[index] == id) {
+                quantities[index] += quantity;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if(size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+            quantities = Arrays.copyOf(quantities, size * 2);
+        }
+        ids[size] = id;
+        quantities[size] = quantity;
+        slots[slot] = ++size;
+        // keeps the table at most half full
+        if(size * 2 > slots.length)
+            rehash(slots.length * 2);
+    }
+
+    /**
+     * @return Amount of distinct products.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index Index of the product, in the order the products first appeared
+     * @return ID of the product
+     */
+    public long getId(int index) {
+        return ids[index];
+    }
+
+    /**
+     * @param index Index of the product, in the order the products first appeared
+     * @return Quantity of the product
+     */
+    public long getQuantity(int index) {
+        return quantities[index];
+    }
+
+    /**
+     * @return IDs of the distinct products, in the order they first appeared.
+     */
+    public long[] getIds() {
+        return Arrays.copyOf(ids, size);
+    }
+
+    /**
+     * @return Sum of the quantities of every product.
+     */
+    public long getTotalQuantity() {
+        return totalQuantity;
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        int mask = capacity - 1;
+        for(int index = 0; index < size; index++) {
+            int slot = hash(ids[index]) & mask;
+            while(slots[slot] != 0)
+                slot = (slot + 1) & mask;
+            slots[slot] = index + 1;
+        }
+    }
+
+    private static int hash(long id) {
+        long hash = id * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
@@ -1,9 +1,31 @@
 package me.robi.invoicesystem.repositories;
 
 import me.robi.invoicesystem.entities.ProductEntity;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+
 @Repository
-public interface ProductRepository extends CrudRepository<ProductEntity, Long> {
+public interface ProductRepository extends CrudRepository<ProductEntity, Long>, ProductRepositoryCustom {
+    /**
+     * Keyset pagination over the products, ordered by their ID.
+     * @param id Only products with a higher ID than this are returned
+     * @param pageable Page size, the page number should always be 0
+     * @return The next page of products
+     */
+    List<ProductEntity> findByIdGreaterThanOrderByIdAsc(long id, Pageable pageable);
+
+    /**
+     * Reads only the ID and amount of the products with the given IDs,
+     * without loading any of them.
+     * @param ids IDs of the products
+     * @return The ID and amount of every existing product, IDs that don't exist are left out
+     */
+    @Query("select p.id as id, p.amount as amount from ProductEntity p where p.id in :ids")
+    List<ProductAmount> findAmountsByIdIn(@Param("ids") Collection<Long> ids);
 }
@@ -0,0 +1,17 @@
+package me.robi.invoicesystem.repositories;
+
+import me.robi.invoicesystem.entities.ProductEntity;
+
+import java.util.function.Consumer;
+
+/**
+ * Queries of {@link ProductRepository} that can't be derived by Spring Data.
+ */
+public interface ProductRepositoryCustom {
+    /**
+     * Streams every product ordered by its ID, without holding
+     * the whole table in memory.
+     * @param action Called for every product, the entity is detached afterwards
+     */
+    void streamAll(Consumer<ProductEntity> action);
+}
@@ -0,0 +1,106 @@
+package me.robi.invoicesystem;
+
+import me.robi.invoicesystem.constants.PathConstants;
+import me.robi.invoicesystem.controllers.invoice.types.PdfInvoiceType;
+import me.robi.invoicesystem.controllers.invoice.types.PdfStorage;
+import org.apache.tomcat.util.http.fileupload.FileUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "invoice.pdf.storage-directory=" + PathConstants.TEST_PDF_FILE_STORAGE)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class AccessPdfTest {
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private PdfInvoiceType pdfInvoiceType;
+
+    private final Path directory = Paths.get(PathConstants.TEST_PDF_FILE_STORAGE);
+    private final byte[] content = new byte[256 * 1024];
+
+    @BeforeAll
+    public void createFile() throws Exception {
+        new Random(0).nextBytes(content);
+        Files.createDirectories(directory);
+        pdfInvoiceType.getFileCache().getStorage().write("served.pdf", file -> Files.write(file, content));
+    }
+
+    @AfterAll
+    public void deleteDirectory() throws Exception {
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    @Test
+    public void testFullResponse() {
+        ResponseEntity<byte[]> response = restTemplate.getForEntity("/api/access-pdf/served", byte[].class);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(MediaType.APPLICATION_PDF, response.getHeaders().getContentType());
+        assertArrayEquals(content, response.getBody());
+        assertNotNull(response.getHeaders().getETag());
+        assertTrue(response.getHeaders().getLastModified() > 0);
+        assertTrue(response.getHeaders().getCacheControl().contains("immutable"));
+    }
+
+    @Test
+    public void testConditionalRequest() {
+        String eTag = restTemplate.getForEntity("/api/access-pdf/served.pdf", byte[].class).getHeaders().getETag();
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch(eTag);
+        ResponseEntity<byte[]> response = restTemplate.exchange("/api/access-pdf/served.pdf", HttpMethod.GET, new HttpEntity<>(headers), byte[].class);
+
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertNull(response.getBody());
+    }
+
+    @Test
+    public void testETagIsIndependentOfNode() throws Exception {
+        String eTag = restTemplate.getForEntity("/api/access-pdf/served.pdf", byte[].class).getHeaders().getETag();
+        assertEquals("\"" + HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content)) + "\"", eTag);
+
+        // another node wrote its copy of the same file at a different time
+        Path file = pdfInvoiceType.getFileCache().getIfPresent("served.pdf");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() - 60_000));
+        assertEquals(eTag, restTemplate.getForEntity("/api/access-pdf/served.pdf", byte[].class).getHeaders().getETag());
+    }
+
+    @Test
+    public void testETagChangesWithRender() throws Exception {
+        PdfStorage storage = pdfInvoiceType.getFileCache().getStorage();
+        storage.write("rendered.pdf", file -> Files.write(file, new byte[]{1, 2, 3}));
+        String eTag = restTemplate.getForEntity("/api/access-pdf/rendered.pdf", byte[].class).getHeaders().getETag();
+
+        // rendered again under the same name, with a different creation date
+        storage.write("rendered.pdf", file -> Files.write(file, new byte[]{1, 2, 4}));
+        assertNotEquals(eTag, restTemplate.getForEntity("/api/access-pdf/rendered.pdf", byte[].class).getHeaders().getETag());
+    }
+
+    @Test
+    public void testRangeRequest() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setRange(HttpRange.parseRanges("bytes=100-199"));
+        ResponseEntity<byte[]> response = restTemplate.exchange("/api/access-pdf/served.pdf", HttpMethod.GET, new HttpEntity<>(headers), byte[].class);
+
+        assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        assertEquals(100, response.getBody().length);
+        assertEquals(content[100], response.getBody()[0]);
+    }
+}
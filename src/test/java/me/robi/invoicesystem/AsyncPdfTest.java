@@ -0,0 +1,98 @@
+package me.robi.invoicesystem;
+
+import me.robi.invoicesystem.constants.PathConstants;
+import me.robi.invoicesystem.entities.ProductEntity;
+import me.robi.invoicesystem.repositories.ProductRepository;
+import org.apache.tomcat.util.http.fileupload.FileUtils;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static me.robi.invoicesystem.constants.ResponseConstants.PdfJobResponseConstants.*;
+import static me.robi.invoicesystem.constants.ResponseConstants.REDIRECT_URL;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest(properties = {
+        "invoice.pdf.storage-directory=" + PathConstants.TEST_PDF_FILE_STORAGE,
+        "invoice.pdf.async.threshold=3"
+})
+@AutoConfigureMockMvc
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class AsyncPdfTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ProductRepository repository;
+
+    @BeforeAll
+    public void createDirectory() throws Exception {
+        Files.createDirectories(Paths.get(PathConstants.TEST_PDF_FILE_STORAGE));
+    }
+
+    @AfterAll
+    public void deleteDirectory() throws Exception {
+        FileUtils.deleteDirectory(Paths.get(PathConstants.TEST_PDF_FILE_STORAGE).toFile());
+    }
+
+    @Test
+    public void testSmallInvoiceIsSynchronous() throws Exception {
+        long id = repository.save(new ProductEntity("Sync Item", 4)).getId();
+
+        mockMvc.perform(get("/api/invoice/pdf").param("id", id + "," + id))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$." + REDIRECT_URL).exists());
+    }
+
+    @Test
+    public void testLargeInvoiceIsQueued() throws Exception {
+        // repeated IDs are a single line, so the invoice needs distinct products to reach the threshold
+        String ids = repository.save(new ProductEntity("Async Item 1", 6)).getId() + ","
+                + repository.save(new ProductEntity("Async Item 2", 6)).getId() + ","
+                + repository.save(new ProductEntity("Async Item 3", 6)).getId();
+
+        JSONObject queued = new JSONObject(mockMvc.perform(get("/api/invoice/pdf").param("id", ids))
+                .andExpect(status().isAccepted())
+                .andExpect(header().exists("Location"))
+                .andReturn().getResponse().getContentAsString());
+        String jobId = queued.getString(JOB_ID);
+        assertTrue(queued.getString(STATUS_URL).endsWith("/api/pdf-jobs/" + jobId));
+
+        JSONObject job = null;
+        for(int i = 0; i < 100; i++) {
+            job = new JSONObject(mockMvc.perform(get("/api/pdf-jobs/" + jobId))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString());
+            if(job.getString(JOB_STATUS).equals("DONE"))
+                break;
+            Thread.sleep(50);
+        }
+        assertEquals("DONE", job.getString(JOB_STATUS));
+        assertTrue(job.getString(REDIRECT_URL).endsWith("/api/access-pdf/" + jobId + ".pdf"));
+
+        // the file already exists, so the link is returned right away
+        mockMvc.perform(get("/api/invoice/pdf").param("id", ids))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$." + REDIRECT_URL).value(job.getString(REDIRECT_URL)));
+        mockMvc.perform(get("/api/pdf-jobs"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$." + COMPLETED).value(1));
+    }
+
+    @Test
+    public void testUnknownJob() throws Exception {
+        mockMvc.perform(get("/api/pdf-jobs/0123456789abcdef"))
+                .andExpect(status().isNotFound());
+    }
+}
@@ -0,0 +1,62 @@
+package me.robi.invoicesystem;
+
+import me.robi.invoicesystem.constants.ResponseConstants.InvoiceResponseConstants;
+import me.robi.invoicesystem.controllers.invoice.types.InvoiceTypeRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {"invoice.warmup.iterations=2", "invoice.warmup.lines=10"})
+@ActiveProfiles("fast-start")
+@AutoConfigureMockMvc
+@AutoConfigureObservability
+public class FastStartTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private StartupTasks startupTasks;
+
+    @Autowired
+    private ConfigurableApplicationContext context;
+
+    @Test
+    public void testDeferredStartup() throws Exception {
+        mockMvc.perform(get("/actuator/health/readiness"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("UP"));
+
+        // queued behind the seeding and the warm-up
+        CompletableFuture<String> done = new CompletableFuture<>();
+        startupTasks.run("test", () -> done.complete(Thread.currentThread().getName()));
+        assertEquals("startup-tasks", done.get(2, TimeUnit.MINUTES));
+
+        mockMvc.perform(get("/api/invoice/raw?id=1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$." + InvoiceResponseConstants.PRODUCTS_SUM).value(11));
+        mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("invoice_warmup_seconds_count{type=\"pdf\"")));
+    }
+
+    @Test
+    public void testLazyInitialization() {
+        assertTrue(context.getBeanFactory().getBeanDefinition("invoiceTypeRegistry").isLazyInit());
+        assertNotNull(context.getBean(InvoiceTypeRegistry.class));
+    }
+}
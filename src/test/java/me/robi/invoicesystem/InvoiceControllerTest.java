@@ -2,25 +2,53 @@ package me.robi.invoicesystem;
 
 import static me.robi.invoicesystem.constants.ResponseConstants.InvoiceResponseConstants.*;
 import static me.robi.invoicesystem.constants.ResponseConstants.REDIRECT_URL;
+import static me.robi.invoicesystem.constants.ResponseConstants.RESPONSE_STATUS;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.not;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.itextpdf.text.Document;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.parser.PdfTextExtractor;
 import me.robi.invoicesystem.constants.PathConstants;
 import me.robi.invoicesystem.constants.ResponseConstants;
+import me.robi.invoicesystem.constants.ResponseConstants.ProductResponseConstants;
 import me.robi.invoicesystem.controllers.invoice.InvoiceController;
+import me.robi.invoicesystem.controllers.invoice.types.BinaryInvoiceType;
+import me.robi.invoicesystem.controllers.invoice.types.CsvInvoiceType;
+import me.robi.invoicesystem.controllers.invoice.types.InvoiceLine;
+import me.robi.invoicesystem.controllers.invoice.types.InvoiceType;
 import me.robi.invoicesystem.controllers.invoice.types.PdfInvoiceType;
+import me.robi.invoicesystem.controllers.invoice.types.RawInvoiceType;
 import me.robi.invoicesystem.entities.ProductEntity;
+import me.robi.invoicesystem.repositories.ProductCatalog;
+import me.robi.invoicesystem.repositories.ProductImporter;
 import me.robi.invoicesystem.repositories.ProductRepository;
 import org.apache.tomcat.util.http.fileupload.FileUtils;
+import org.json.JSONArray;
 import org.json.JSONObject;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import org.junit.jupiter.api.TestInstance;
@@ -29,26 +57,36 @@ import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
-@WebMvcTest(InvoiceController.class)
+@WebMvcTest(value = {InvoiceController.class, PdfInvoiceType.class}, properties = "invoice.pdf.storage-directory=" + PathConstants.TEST_PDF_FILE_STORAGE)
+@Import({ProductCatalog.class, InvoiceTypeConfig.class, StartupTasks.class})
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 public class InvoiceControllerTest {
     @Autowired
@@ -57,6 +95,25 @@ public class InvoiceControllerTest {
     @MockBean
     private ProductRepository repository;
 
+    @MockBean
+    private ProductImporter importer;
+
+    @Autowired
+    private ProductCatalog catalog;
+
+    @Autowired
+    private PdfInvoiceType pdfInvoiceType;
+
+    @BeforeEach
+    public void clearCatalog() {
+        catalog.invalidateAll();
+    }
+
+    @AfterAll
+    public void deleteDirectory() throws Exception {
+        FileUtils.deleteDirectory(Paths.get(PathConstants.TEST_PDF_FILE_STORAGE).toFile());
+    }
+
     @Test
     public void testProductsList() throws Exception {
         when(repository.findAll()).thenReturn(Arrays.asList(
@@ -75,6 +132,123 @@ public class InvoiceControllerTest {
         assertEquals(productEntities.get(1).getName(), "TestItem 2");
     }
 
+    @Test
+    public void testProductsPage() throws Exception {
+        List<ProductEntity> list = Arrays.asList(
+                new ProductEntity("TestItem 1", 7),
+                new ProductEntity("TestItem 2", 14),
+                new ProductEntity("TestItem 3", 9)
+        );
+        mockRepository(list);
+        when(repository.findByIdGreaterThanOrderByIdAsc(anyLong(), any())).thenReturn(list.subList(1, 3));
+
+        // served from the repository
+        mockMvc.perform(get("/api/products").param("after", "1").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$." + ProductResponseConstants.PRODUCTS_LIST + "[0].name").value("TestItem 2"))
+                .andExpect(jsonPath("$." + ProductResponseConstants.NEXT_AFTER).value(3));
+        verify(repository, times(1)).findByIdGreaterThanOrderByIdAsc(anyLong(), any());
+
+        // served from the cached catalog
+        mockMvc.perform(get("/api/products")).andExpect(status().isOk());
+        mockMvc.perform(get("/api/products").param("after", "2").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$." + ProductResponseConstants.PRODUCTS_LIST + ".length()").value(1))
+                .andExpect(jsonPath("$." + ProductResponseConstants.NEXT_AFTER).doesNotExist());
+        verify(repository, times(1)).findByIdGreaterThanOrderByIdAsc(anyLong(), any());
+
+        mockMvc.perform(get("/api/products").param("limit", "0"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testProductsStream() throws Exception {
+        List<ProductEntity> list = Arrays.asList(
+                new ProductEntity("TestItem 1", 7),
+                new ProductEntity("TestItem 2", 14)
+        );
+        mockRepository(list);
+        doAnswer(invocationOnMock -> {
+            list.forEach(invocationOnMock.<Consumer<ProductEntity>>getArgument(0));
+            return null;
+        }).when(repository).streamAll(any());
+
+        MvcResult response = mockMvc.perform(get("/api/products").param("stream", "true"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andReturn();
+
+        List<ProductEntity> productEntities = Arrays.asList(new ObjectMapper().readValue(response.getResponse().getContentAsString(), ProductEntity[].class));
+        assertEquals(2, productEntities.size());
+        assertEquals("TestItem 2", productEntities.get(1).getName());
+        verify(repository, never()).findAll();
+    }
+
+    @Test
+    public void testProductsNotModified() throws Exception {
+        mockRepository(Arrays.asList(
+                new ProductEntity("TestItem 1", 7),
+                new ProductEntity("TestItem 2", 14)
+        ));
+
+        String eTag = mockMvc.perform(get("/api/products"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        mockMvc.perform(get("/api/products").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+        mockMvc.perform(get("/api/products").param("stream", "true").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+        verify(repository, times(1)).findAll();
+
+        catalog.invalidate(2);
+        mockMvc.perform(get("/api/products").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, not(eTag)));
+    }
+
+    @Test
+    public void testProductsDelta() throws Exception {
+        List<ProductEntity> list = new ArrayList<>(Arrays.asList(
+                new ProductEntity("TestItem 1", 7),
+                new ProductEntity("TestItem 2", 14),
+                new ProductEntity("TestItem 3", 9)
+        ));
+        mockRepository(list);
+
+        long version = new JSONObject(mockMvc.perform(get("/api/products").param("since", "0"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$." + ProductResponseConstants.FULL_SYNC).value(true))
+                .andExpect(jsonPath("$." + ProductResponseConstants.PRODUCTS_LIST + ".length()").value(3))
+                .andReturn().getResponse().getContentAsString()).getLong(ProductResponseConstants.VERSION);
+
+        mockMvc.perform(get("/api/products").param("since", String.valueOf(version)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$." + ProductResponseConstants.FULL_SYNC).value(false))
+                .andExpect(jsonPath("$." + ProductResponseConstants.PRODUCTS_LIST + ".length()").value(0));
+
+        list.get(0).setName("Renamed Item");
+        catalog.invalidate(1);
+        list.set(2, null);
+        catalog.invalidate(3);
+        doAnswer(invocationOnMock -> {
+            List<ProductEntity> found = new ArrayList<>();
+            for(Long l : invocationOnMock.<Iterable<Long>>getArgument(0))
+                if(list.get((int) (l - 1)) != null)
+                    found.add(list.get((int) (l - 1)));
+            return found;
+        }).when(repository).findAllById(any());
+
+        mockMvc.perform(get("/api/products").param("since", String.valueOf(version)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$." + ProductResponseConstants.VERSION).value(version + 2))
+                .andExpect(jsonPath("$." + ProductResponseConstants.FULL_SYNC).value(false))
+                .andExpect(jsonPath("$." + ProductResponseConstants.PRODUCTS_LIST + ".length()").value(1))
+                .andExpect(jsonPath("$." + ProductResponseConstants.PRODUCTS_LIST + "[0].name").value("Renamed Item"))
+                .andExpect(jsonPath("$." + ProductResponseConstants.DELETED_IDS + "[0]").value(3));
+    }
+
     @Test
     public void testRawResponse() throws Exception {
         List<ProductEntity> list = Arrays.asList(
@@ -83,8 +257,7 @@ public class InvoiceControllerTest {
                 new ProductEntity("TestItem 3", 9),
                 new ProductEntity("TestItem 4", 11)
         );
-        when(repository.findAll()).thenReturn(list);
-        when(repository.findById(anyLong())).thenAnswer(invocationOnMock -> Optional.of(list.get((int) (invocationOnMock.getArgument(0, Long.class) - 1))));
+        mockRepository(list);
 
         MvcResult response = mockMvc.perform(get("/api/invoice")
                         .param("id", "1,3"))
@@ -92,9 +265,290 @@ public class InvoiceControllerTest {
                 .andExpect(status().isOk())
                 .andReturn();
         JSONObject object = new JSONObject(response.getResponse().getContentAsString());
-        List<ProductEntity> productEntities = Arrays.asList(new ObjectMapper().readValue(object.getJSONArray(PRODUCTS_LIST).toString(), ProductEntity[].class));
         assertEquals(16, object.getInt(PRODUCTS_SUM));
-        assertEquals(productEntities.size(), 2);
+        assertEquals(2, object.getJSONArray(PRODUCTS_LIST).length());
+        assertEquals("TestItem 3", object.getJSONArray(PRODUCTS_LIST).getJSONObject(1).getString("name"));
+    }
+
+    @Test
+    public void testLargeRawResponse() throws Exception {
+        List<ProductEntity> list = new ArrayList<>();
+        for(int i = 0; i < RawInvoiceType.STREAM_LINES; i++)
+            list.add(new ProductEntity("TestItem \"" + i + "\"", 2));
+        mockRepository(list);
+
+        String ids = String.join(",", list.stream().map(product -> String.valueOf(product.getId())).toList());
+        MvcResult response = mockMvc.perform(get("/api/invoice/raw").param("id", ids))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andReturn();
+
+        assertNull(response.getResponse().getHeader("Content-Length"));
+        JSONObject object = new JSONObject(response.getResponse().getContentAsString());
+        assertEquals(list.size() * 2, object.getInt(PRODUCTS_SUM));
+        assertEquals(list.size(), object.getJSONArray(PRODUCTS_LIST).length());
+        assertEquals("TestItem \"7\"", object.getJSONArray(PRODUCTS_LIST).getJSONObject(7).getString("name"));
+    }
+
+    @Test
+    public void testRawFragments() throws Exception {
+        ProductEntity product = new ProductEntity("Old Name", 3);
+        ReflectionTestUtils.setField(product, "id", 1L);
+        RawInvoiceType rawInvoiceType = new RawInvoiceType();
+
+        SerializableString fragment = rawInvoiceType.getFragments().get(product);
+        assertSame(fragment, rawInvoiceType.getFragments().get(product));
+
+        product.setName("New Name");
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        rawInvoiceType.write(List.of(new InvoiceLine(product, 2)), 6, outputStream);
+        JSONObject object = new JSONObject(outputStream.toString(StandardCharsets.UTF_8));
+        JSONObject line = object.getJSONArray(PRODUCTS_LIST).getJSONObject(0);
+        assertEquals("New Name", line.getString("name"));
+        assertEquals(2, line.getLong(QUANTITY));
+        assertEquals(6, line.getLong(LINE_TOTAL));
+
+        product.setAmount(4);
+        assertNotSame(rawInvoiceType.getFragments().get(product), rawInvoiceType.getFragments().get(new ProductEntity("New Name", 3)));
+        assertTrue(rawInvoiceType.getFragments().get(product).getValue().contains("\"amount\":4"));
+    }
+
+    @Test
+    public void testBinaryResponses() throws Exception {
+        mockRepository(Arrays.asList(
+                new ProductEntity("TestItem 1", 7),
+                new ProductEntity("TestItem 2", 14)
+        ));
+
+        for(ObjectMapper mapper : List.of(new ObjectMapper(new CBORFactory()), new ObjectMapper(new SmileFactory()))) {
+            String type = mapper.getFactory() instanceof CBORFactory ? InvoiceType.CBOR_INVOICE : InvoiceType.SMILE_INVOICE;
+            MvcResult response = mockMvc.perform(get("/api/invoice/" + type).param("id", "1,2,1"))
+                    .andExpect(status().isOk())
+                    .andReturn();
+
+            JsonNode node = mapper.readTree(response.getResponse().getContentAsByteArray());
+            assertEquals(28, node.get(PRODUCTS_SUM).asInt());
+            assertEquals(2, node.get(PRODUCTS_LIST).size());
+            assertEquals("TestItem 2", node.get(PRODUCTS_LIST).get(1).get("name").asText());
+            assertEquals(2, node.get(PRODUCTS_LIST).get(0).get(QUANTITY).asLong());
+            assertEquals(14, node.get(PRODUCTS_LIST).get(0).get(LINE_TOTAL).asLong());
+        }
+    }
+
+    @Test
+    public void testCsvResponse() throws Exception {
+        mockRepository(Arrays.asList(
+                new ProductEntity("TestItem 1", 7),
+                new ProductEntity("Test, \"Item\" 2", 14)
+        ));
+
+        mockMvc.perform(get("/api/invoice/csv").param("id", "1,2:3"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(CsvInvoiceType.TEXT_CSV))
+                .andExpect(header().string(CsvInvoiceType.AMOUNT_SUM_HEADER, "49"))
+                .andExpect(content().string("id,name,amount,quantity,lineTotal\r\n1,TestItem 1,7,1,7\r\n2,\"Test, \"\"Item\"\" 2\",14,3,42\r\n"));
+    }
+
+    @Test
+    public void testAcceptNegotiation() throws Exception {
+        mockRepository(Arrays.asList(new ProductEntity("TestItem 1", 7)));
+
+        mockMvc.perform(get("/api/invoice").param("id", "1").accept("text/csv"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(CsvInvoiceType.TEXT_CSV))
+                .andExpect(header().stringValues(HttpHeaders.VARY, hasItem(HttpHeaders.ACCEPT)));
+        mockMvc.perform(get("/api/invoice").param("id", "1").header(HttpHeaders.ACCEPT, "application/json;q=0.5, application/cbor"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(BinaryInvoiceType.APPLICATION_CBOR));
+        mockMvc.perform(get("/api/invoice").param("id", "1").header(HttpHeaders.ACCEPT, "text/html, */*;q=0.8"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON));
+        mockMvc.perform(get("/api/invoice/raw").param("id", "1").accept("text/csv"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(header().stringValues(HttpHeaders.VARY, not(hasItem(HttpHeaders.ACCEPT))));
+    }
+
+    @Test
+    public void testSummaryResponse() throws Exception {
+        mockRepository(Arrays.asList(
+                new ProductEntity("TestItem 1", Integer.MAX_VALUE),
+                new ProductEntity("TestItem 2", 14)
+        ));
+        catalog.getProducts(new long[]{1, 2});
+
+        mockMvc.perform(get("/api/invoice/summary").param("id", "1,2,1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$." + LINE_COUNT).value(3))
+                .andExpect(jsonPath("$." + PRODUCTS_SUM).value(2L * Integer.MAX_VALUE + 14));
+        mockMvc.perform(get("/api/invoice/summary").param("id", "1:2", "2:5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$." + LINE_COUNT).value(7))
+                .andExpect(jsonPath("$." + PRODUCTS_SUM).value(2L * Integer.MAX_VALUE + 70));
+        mockMvc.perform(get("/api/invoice").param("id", "1,2,1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$." + PRODUCTS_SUM).value(2L * Integer.MAX_VALUE + 14));
+        verify(repository, never()).findAmountsByIdIn(any());
+    }
+
+    @Test
+    public void testSummaryOverflow() throws Exception {
+        mockRepository(Arrays.asList(
+                new ProductEntity("TestItem 1", Integer.MAX_VALUE),
+                new ProductEntity("TestItem 2", Integer.MAX_VALUE),
+                new ProductEntity("TestItem 3", Integer.MAX_VALUE)
+        ));
+        catalog.getProducts(new long[]{1, 2, 3});
+
+        String quantity = ":" + Integer.MAX_VALUE;
+        mockMvc.perform(get("/api/invoice/summary").param("id", "1" + quantity, "2" + quantity, "3" + quantity))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$." + RESPONSE_STATUS).value("Amount sum is too large for an invoice."));
+    }
+
+    @Test
+    public void testBatchedLookup() throws Exception {
+        List<ProductEntity> list = Arrays.asList(
+                new ProductEntity("TestItem 1", 7),
+                new ProductEntity("TestItem 2", 14),
+                new ProductEntity("TestItem 3", 9)
+        );
+        mockRepository(list);
+
+        MvcResult response = mockMvc.perform(get("/api/invoice")
+                        .param("id", "3,1,3,2,3"))
+                .andExpect(status().isOk())
+                .andReturn();
+        JSONObject object = new JSONObject(response.getResponse().getContentAsString());
+        JSONArray lines = object.getJSONArray(PRODUCTS_LIST);
+        assertEquals(48, object.getInt(PRODUCTS_SUM));
+        assertEquals(3, lines.length());
+        assertEquals("TestItem 3", lines.getJSONObject(0).getString("name"));
+        assertEquals(3, lines.getJSONObject(0).getLong(QUANTITY));
+        assertEquals(27, lines.getJSONObject(0).getLong(LINE_TOTAL));
+        assertEquals("TestItem 2", lines.getJSONObject(2).getString("name"));
+
+        verify(repository, times(1)).findAllById(argThat(ids -> ((Collection<?>) ids).size() == 3));
+        verify(repository, never()).findById(anyLong());
+    }
+
+    @Test
+    public void testQuantitySyntax() throws Exception {
+        mockRepository(Arrays.asList(
+                new ProductEntity("TestItem 1", 7),
+                new ProductEntity("TestItem 2", 14)
+        ));
+
+        mockMvc.perform(get("/api/invoice").param("id", "2:3, 1", "2", "1:2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$." + PRODUCTS_SUM).value(77))
+                .andExpect(jsonPath("$." + PRODUCTS_LIST + ".length()").value(2))
+                .andExpect(jsonPath("$." + PRODUCTS_LIST + "[0]." + QUANTITY).value(4))
+                .andExpect(jsonPath("$." + PRODUCTS_LIST + "[1]." + LINE_TOTAL).value(21));
+
+        for(String id : List.of("1:0", "1:-2", "one", "1:2:3", "1:"))
+            mockMvc.perform(get("/api/invoice").param("id", id))
+                    .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/invoice"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testMissingProducts() throws Exception {
+        mockRepository(Arrays.asList(new ProductEntity("TestItem 1", 7)));
+
+        mockMvc.perform(get("/api/invoice").param("id", "1,5"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$." + RESPONSE_STATUS).value("Product of ID 5 not found."));
+        mockMvc.perform(get("/api/invoice").param("id", "7,1,5,7"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$." + RESPONSE_STATUS).value("Products of ID 7, 5 not found."));
+    }
+
+    /**
+     * Assigns IDs starting from 1 to the given entities,
+     * and makes the repository return them on lookup.
+     * @param list List of entities to be served by the mocked repository
+     */
+    private void mockRepository(List<ProductEntity> list) {
+        for(int i = 0; i < list.size(); i++)
+            ReflectionTestUtils.setField(list.get(i), "id", (long) i + 1);
+        when(repository.findAll()).thenReturn(list);
+        when(repository.findAllById(any())).thenAnswer(invocationOnMock -> {
+            List<ProductEntity> found = new ArrayList<>();
+            for(Long l : invocationOnMock.<Iterable<Long>>getArgument(0))
+                if(l >= 1 && l <= list.size())
+                    found.add(list.get((int) (l - 1)));
+            return found;
+        });
+    }
+
+    @Test
+    public void testPdfStreamResponse() throws Exception {
+        mockRepository(Arrays.asList(
+                new ProductEntity("TestItem 1", 7),
+                new ProductEntity("TestItem 2", 14)
+        ));
+
+        MvcResult response = mockMvc.perform(get("/api/invoice/pdf-stream").param("id", "1,2"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_PDF))
+                .andReturn();
+
+        byte[] pdf = response.getResponse().getContentAsByteArray();
+        assertEquals("%PDF", new String(pdf, 0, 4));
+        assertNull(response.getResponse().getHeader("Content-Length"));
+    }
+
+    @Test
+    public void testBulkInvoice() throws Exception {
+        mockRepository(Arrays.asList(
+                new ProductEntity("TestItem 1", 7),
+                new ProductEntity("TestItem 2", 14),
+                new ProductEntity("TestItem 3", 9)
+        ));
+
+        MvcResult response = mockMvc.perform(post("/api/invoice/bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[[1, 2], [3, 3], [2]]"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/zip"))
+                .andReturn();
+
+        List<String> entries = new ArrayList<>();
+        try(ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(response.getResponse().getContentAsByteArray()))) {
+            ZipEntry entry;
+            while((entry = zip.getNextEntry()) != null) {
+                entries.add(entry.getName());
+                assertEquals("%PDF", new String(zip.readAllBytes(), 0, 4));
+            }
+        }
+        entries.sort(null);
+        assertEquals(Arrays.asList("invoice-0.pdf", "invoice-1.pdf", "invoice-2.pdf"), entries);
+        verify(repository, times(1)).findAllById(any());
+
+        mockMvc.perform(post("/api/invoice/bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[[1], [4]]"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$." + RESPONSE_STATUS).value("Product of ID 4 not found."));
+    }
+
+    @Test
+    public void testLargePdf() throws Exception {
+        List<ProductEntity> list = new ArrayList<>();
+        for(int i = 0; i < PdfInvoiceType.FLUSH_ROWS * 2 + 10; i++)
+            list.add(new ProductEntity("TestItem " + i, 1));
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        new PdfInvoiceType().generatePdf(list.stream().map(product -> new InvoiceLine(product, 1)).toList(), list.size(), outputStream);
+
+        PdfReader reader = new PdfReader(outputStream.toByteArray());
+        String lastPage = PdfTextExtractor.getTextFromPage(reader, reader.getNumberOfPages());
+        assertTrue(reader.getNumberOfPages() > 1);
+        assertTrue(lastPage.contains("TestItem " + (list.size() - 1)));
+        assertTrue(lastPage.contains("Total Sum"));
+        reader.close();
     }
 
     @Test
@@ -105,30 +559,26 @@ public class InvoiceControllerTest {
                 new ProductEntity("TestItem 3", 9),
                 new ProductEntity("TestItem 4", 11)
         );
+        ReflectionTestUtils.setField(list.get(0), "id", 1L);
+        ReflectionTestUtils.setField(list.get(2), "id", 3L);
         int sum = 16;
-
-        PdfInvoiceType pdfInvoiceType = new PdfInvoiceType();
-        Path p = Paths.get(PathConstants.TEST_PDF_FILE_STORAGE);
-        Files.createDirectories(p);
-
-        String fileName = "test.pdf";
-
-        File f = Paths.get(PathConstants.TEST_PDF_FILE_STORAGE, fileName).toFile();
+        List<InvoiceLine> lines = Arrays.asList(new InvoiceLine(list.get(0), 1), new InvoiceLine(list.get(2), 1));
+        String fileName = PdfInvoiceType.getFileName(lines);
 
         String redirectFileName;
         // make sure file gets created
         {
-            ResponseEntity response = pdfInvoiceType.getResponse(new MockHttpServletRequest(), Arrays.asList(list.get(0), list.get(2)), sum, f);
+            ResponseEntity response = pdfInvoiceType.getResponse(new MockHttpServletRequest(), lines, sum);
             String[] redirectUrlSplit = ((Map) response.getBody()).get(REDIRECT_URL).toString().split("/");
             redirectFileName = redirectUrlSplit[redirectUrlSplit.length - 1];
 
             assertEquals(HttpStatus.OK, response.getStatusCode());
             assertEquals(redirectFileName, fileName);
-            assertTrue(f.exists());
+            assertNotNull(pdfInvoiceType.getFileCache().getIfPresent(fileName));
         }
         // make sure it returns the link that already exists if its queried a second time
         {
-            ResponseEntity response = pdfInvoiceType.getResponse(new MockHttpServletRequest(), Arrays.asList(list.get(0), list.get(2)), sum, f);
+            ResponseEntity response = pdfInvoiceType.getResponse(new MockHttpServletRequest(), lines, sum);
             String[] redirectUrlSplit = ((Map) response.getBody()).get(REDIRECT_URL).toString().split("/");
             String secondRedirectFileName = redirectUrlSplit[redirectUrlSplit.length - 1];
 
@@ -136,12 +586,10 @@ public class InvoiceControllerTest {
         }
         // make sure the redirect url returns a valid file
         {
-            ResponseEntity response = pdfInvoiceType.accessPdf(fileName, PathConstants.TEST_PDF_FILE_STORAGE);
+            ResponseEntity response = pdfInvoiceType.accessPdf(fileName, new MockHttpServletRequest());
             assertEquals(HttpStatus.OK, response.getStatusCode());
             assertEquals(MediaType.APPLICATION_PDF, response.getHeaders().getContentType());
-            assertArrayEquals((byte[]) response.getBody(), Files.readAllBytes(f.toPath()));
+            assertArrayEquals(((Resource) response.getBody()).getInputStream().readAllBytes(), Files.readAllBytes(pdfInvoiceType.getFileCache().getIfPresent(fileName)));
         }
-
-        FileUtils.deleteDirectory(p.toFile());
     }
 }
@@ -0,0 +1,134 @@
+package me.robi.invoicesystem;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import me.robi.invoicesystem.constants.PathConstants;
+import me.robi.invoicesystem.constants.MetricConstants;
+import me.robi.invoicesystem.controllers.invoice.InvoiceTrace;
+import me.robi.invoicesystem.controllers.invoice.types.InvoiceLine;
+import me.robi.invoicesystem.controllers.invoice.types.InvoiceType;
+import me.robi.invoicesystem.controllers.invoice.types.InvoiceTypeRegistry;
+import me.robi.invoicesystem.controllers.invoice.types.PdfInvoiceType;
+import me.robi.invoicesystem.entities.ProductEntity;
+import me.robi.invoicesystem.repositories.ProductRepository;
+import org.apache.tomcat.util.http.fileupload.FileUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "invoice.tracing.server-timing=true",
+        "invoice.pdf.storage-directory=" + PathConstants.TEST_PDF_FILE_STORAGE
+})
+@AutoConfigureMockMvc
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class InvoiceTraceTest {
+    private static final List<String> PHASES = List.of(InvoiceTrace.PARSE, InvoiceTrace.RESOLVE, InvoiceTrace.SUM, InvoiceTrace.RENDER, InvoiceTrace.WRITE, InvoiceTrace.URL);
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ProductRepository repository;
+
+    @Autowired
+    private InvoiceTypeRegistry invoiceTypeRegistry;
+
+    @Autowired
+    private PdfInvoiceType pdfInvoiceType;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Path directory = Paths.get(PathConstants.TEST_PDF_FILE_STORAGE);
+
+    @BeforeAll
+    public void createDirectory() throws Exception {
+        Files.createDirectories(directory);
+    }
+
+    @AfterAll
+    public void deleteDirectory() throws Exception {
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    @Test
+    public void testPhases() throws Exception {
+        ProductEntity first = repository.save(new ProductEntity("Traced Item", 6));
+        ProductEntity second = repository.save(new ProductEntity("Other Traced Item", 2));
+
+        Path dump = Files.createTempFile("invoice-trace", ".jfr");
+        String serverTiming;
+        try(Recording recording = new Recording()) {
+            recording.enable("me.robi.invoicesystem.InvoicePhase");
+            recording.start();
+            serverTiming = mockMvc.perform(get("/api/invoice/pdf").param("id", String.valueOf(first.getId()), String.valueOf(second.getId())))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getHeader("Server-Timing");
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        assertNotNull(serverTiming);
+        for(String phase : PHASES)
+            assertTrue(serverTiming.contains(phase + ";dur="), serverTiming);
+        assertTrue(serverTiming.contains("total;dur="), serverTiming);
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+        Files.delete(dump);
+        Set<String> phases = events.stream().map(event -> event.getString("phase")).collect(Collectors.toSet());
+        assertEquals(Set.copyOf(PHASES), phases);
+        for(RecordedEvent event : events) {
+            assertEquals("pdf", event.getString("type"));
+            assertEquals(2, event.getInt("lines"));
+        }
+    }
+
+    @Test
+    public void testStreamedInvoice() throws Exception {
+        ProductEntity product = repository.save(new ProductEntity("Streamed Item", 5));
+        Timer timer = meterRegistry.timer(MetricConstants.INVOICE_REQUEST, MetricConstants.TAG_TYPE, InvoiceType.PDF_STREAM_INVOICE);
+        long count = timer.count();
+
+        String serverTiming = mockMvc.perform(get("/api/invoice/pdf-stream").param("id", String.valueOf(product.getId())))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("Server-Timing");
+
+        // the headers are sent before the invoice is rendered, but the request is timed until it's written
+        assertNull(serverTiming);
+        assertEquals(count + 1, timer.count());
+        assertEquals(0, pdfInvoiceType.getAdmissionControl().getActive());
+
+        // a body that is never written still releases its permit once the request completes
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        InvoiceTrace trace = InvoiceTrace.start(request);
+        ResponseEntity response = invoiceTypeRegistry.get(InvoiceType.PDF_STREAM_INVOICE)
+                .getResponse(request, List.of(new InvoiceLine(product, 1)), product.getAmount());
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(1, pdfInvoiceType.getAdmissionControl().getActive());
+        trace.complete();
+        assertEquals(0, pdfInvoiceType.getAdmissionControl().getActive());
+    }
+}
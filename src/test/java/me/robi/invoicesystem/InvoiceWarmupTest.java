@@ -0,0 +1,76 @@
+package me.robi.invoicesystem;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import me.robi.invoicesystem.controllers.invoice.types.CsvInvoiceType;
+import me.robi.invoicesystem.controllers.invoice.types.InvoiceType;
+import me.robi.invoicesystem.controllers.invoice.types.InvoiceTypeRegistry;
+import me.robi.invoicesystem.controllers.invoice.types.PdfInvoiceType;
+import me.robi.invoicesystem.repositories.ProductCatalog;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.List;
+import java.util.Set;
+
+import static me.robi.invoicesystem.constants.MetricConstants.INVOICE_REQUEST;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {"invoice.warmup.iterations=2", "invoice.warmup.lines=10", "management.metrics.use-global-registry=false"})
+@AutoConfigureMockMvc
+@AutoConfigureObservability
+public class InvoiceWarmupTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private InvoiceTypeRegistry registry;
+
+    @Autowired
+    private PdfInvoiceType pdfInvoiceType;
+
+    @Autowired
+    private ProductCatalog catalog;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    public void testRegistry() {
+        assertEquals(Set.of(InvoiceType.RAW_INVOICE, InvoiceType.PDF_INVOICE, InvoiceType.PDF_STREAM_INVOICE,
+                InvoiceType.CBOR_INVOICE, InvoiceType.SMILE_INVOICE, InvoiceType.CSV_INVOICE), registry.getTypes().keySet());
+        assertSame(pdfInvoiceType, registry.get(InvoiceType.PDF_INVOICE));
+        assertNull(registry.get("docx"));
+        assertThrows(UnsupportedOperationException.class, () -> registry.getTypes().remove(InvoiceType.RAW_INVOICE));
+        assertThrows(IllegalStateException.class, () -> new InvoiceTypeRegistry(List.of(new CsvInvoiceType(), new CsvInvoiceType())));
+    }
+
+    @Test
+    public void testWarmupBeforeReadiness() throws Exception {
+        mockMvc.perform(get("/actuator/health/readiness"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("UP"));
+
+        mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("invoice_warmup_seconds_count{type=\"pdf\"")))
+                .andExpect(content().string(containsString("invoice_warmup_seconds_count{type=\"csv\"")));
+    }
+
+    @Test
+    public void testWarmupRequestsAreNotRecorded() {
+        // every warm-up request looked up the missing product
+        assertTrue(catalog.getMissCount() >= 2L * registry.getTypes().size());
+        // the registry isn't part of the global one, which the other test contexts record into
+        assertTrue(meterRegistry.find(INVOICE_REQUEST).timers().isEmpty());
+        assertTrue(meterRegistry.find("http.server.requests").tag("uri", "/api/invoice/{type}").timers().isEmpty());
+    }
+}
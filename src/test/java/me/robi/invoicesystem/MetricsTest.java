@@ -0,0 +1,40 @@
+package me.robi.invoicesystem;
+
+import me.robi.invoicesystem.entities.ProductEntity;
+import me.robi.invoicesystem.repositories.ProductRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureObservability
+public class MetricsTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ProductRepository repository;
+
+    @Test
+    public void testPrometheusEndpoint() throws Exception {
+        ProductEntity product = repository.save(new ProductEntity("Measured Item", 4));
+        mockMvc.perform(get("/api/invoice/raw").param("id", String.valueOf(product.getId())))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("invoice_request_seconds_count{type=\"raw\"")))
+                .andExpect(content().string(containsString("invoice_lines_count{type=\"raw\"")))
+                .andExpect(content().string(containsString("invoice_catalog_size")))
+                .andExpect(content().string(containsString("invoice_pdf_cache_size")));
+    }
+}
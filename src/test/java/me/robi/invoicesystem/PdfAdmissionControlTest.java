@@ -0,0 +1,234 @@
+package me.robi.invoicesystem;
+
+import me.robi.invoicesystem.constants.PathConstants;
+import me.robi.invoicesystem.controllers.invoice.BulkInvoiceWriter;
+import me.robi.invoicesystem.controllers.invoice.types.InvoiceLine;
+import me.robi.invoicesystem.controllers.invoice.types.PdfAdmissionControl;
+import me.robi.invoicesystem.controllers.invoice.types.PdfAdmissionControl.AdmissionRejectedException;
+import me.robi.invoicesystem.controllers.invoice.types.PdfInvoiceType;
+import me.robi.invoicesystem.entities.ProductEntity;
+import me.robi.invoicesystem.repositories.ProductRepository;
+import org.apache.tomcat.util.http.fileupload.FileUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipInputStream;
+
+import static me.robi.invoicesystem.constants.ResponseConstants.REDIRECT_URL;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest(properties = {
+        "invoice.pdf.storage-directory=" + PathConstants.TEST_PDF_FILE_STORAGE,
+        "invoice.pdf.admission.client-rate=0.01",
+        "invoice.pdf.admission.client-burst=1",
+        "invoice.pdf.admission.max-wait=100ms"
+})
+@AutoConfigureMockMvc
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class PdfAdmissionControlTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ProductRepository repository;
+
+    @Autowired
+    private PdfInvoiceType pdfInvoiceType;
+
+    @BeforeAll
+    public void createDirectory() throws Exception {
+        Files.createDirectories(Paths.get(PathConstants.TEST_PDF_FILE_STORAGE));
+    }
+
+    @AfterAll
+    public void deleteDirectory() throws Exception {
+        FileUtils.deleteDirectory(Paths.get(PathConstants.TEST_PDF_FILE_STORAGE).toFile());
+    }
+
+    @Test
+    public void testClientTokens() {
+        PdfAdmissionControl admissionControl = new PdfAdmissionControl(10, 10, Duration.ZERO, 0.5, 2);
+
+        admissionControl.acquire("first").close();
+        admissionControl.acquire("first").close();
+        AdmissionRejectedException rejection = assertThrows(AdmissionRejectedException.class, () -> admissionControl.acquire("first"));
+        assertEquals(2, rejection.getRetryAfterSeconds());
+
+        admissionControl.acquire("second").close();
+        assertEquals(1, admissionControl.getClientRejectionCount());
+    }
+
+    @Test
+    public void testSaturation() {
+        PdfAdmissionControl admissionControl = new PdfAdmissionControl(1, 1, Duration.ofMillis(10), 1000, 1000);
+
+        PdfAdmissionControl.Permit permit = admissionControl.acquire("client");
+        assertEquals(1, admissionControl.getActive());
+        AdmissionRejectedException rejection = assertThrows(AdmissionRejectedException.class, () -> admissionControl.acquire("client"));
+        assertTrue(rejection.getRetryAfterSeconds() >= 1);
+        assertEquals(1, admissionControl.getSaturationRejectionCount());
+
+        permit.close();
+        permit.close();
+        assertEquals(0, admissionControl.getActive());
+        admissionControl.acquire("client").close();
+
+        assertThrows(AdmissionRejectedException.class, () -> admissionControl.checkQueue(1));
+    }
+
+    @Test
+    public void testAwait() throws Exception {
+        PdfAdmissionControl admissionControl = new PdfAdmissionControl(1, 1, Duration.ZERO, 0.01, 1);
+
+        PdfAdmissionControl.Permit permit = admissionControl.acquire("client");
+        CompletableFuture<PdfAdmissionControl.Permit> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return admissionControl.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(50);
+        assertFalse(waiting.isDone());
+
+        // waits past max-wait and doesn't take a token, the client has none left
+        permit.close();
+        waiting.get(1, TimeUnit.SECONDS).close();
+        assertEquals(0, admissionControl.getActive());
+        assertEquals(0, admissionControl.getClientRejectionCount());
+    }
+
+    @Test
+    public void testCheapPathsStayAvailable() throws Exception {
+        ProductEntity first = repository.save(new ProductEntity("Admitted Item", 3));
+        ProductEntity second = repository.save(new ProductEntity("Rejected Item", 7));
+
+        mockMvc.perform(get("/api/invoice/pdf").param("id", String.valueOf(first.getId())))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$." + REDIRECT_URL).exists());
+
+        mockMvc.perform(get("/api/invoice/pdf").param("id", String.valueOf(second.getId())))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "100"));
+        mockMvc.perform(get("/api/invoice/pdf-stream").param("id", String.valueOf(second.getId())))
+                .andExpect(status().isServiceUnavailable());
+
+        mockMvc.perform(get("/api/invoice/pdf").param("id", String.valueOf(first.getId())))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/invoice/raw").param("id", String.valueOf(second.getId())))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void testBulkIsShed() throws Exception {
+        ProductEntity product = repository.save(new ProductEntity("Bulk Item", 4));
+        String body = String.format("[[%1$d], [%1$d, %1$d]]", product.getId());
+        PdfAdmissionControl admissionControl = pdfInvoiceType.getAdmissionControl();
+
+        // every render slot is taken
+        List<PdfAdmissionControl.Permit> permits = new ArrayList<>();
+        try {
+            while(true)
+                permits.add(admissionControl.acquire("saturating-" + permits.size()));
+        } catch (AdmissionRejectedException e) {
+            // saturated
+        }
+        try {
+            mockMvc.perform(post("/api/invoice/bulk").with(request -> {
+                                request.setRemoteAddr("10.0.0.1");
+                                return request;
+                            })
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(body))
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(header().exists(HttpHeaders.RETRY_AFTER));
+        } finally {
+            permits.forEach(PdfAdmissionControl.Permit::close);
+        }
+        assertEquals(0, admissionControl.getActive());
+
+        // the client's single token admits a whole bulk request, with more invoices than the burst
+        byte[] zip = mockMvc.perform(post("/api/invoice/bulk").with(request -> {
+                            request.setRemoteAddr("10.0.0.2");
+                            return request;
+                        })
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(String.format("[[%1$d], [%1$d], [%1$d], [%1$d, %1$d]]", product.getId())))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray();
+        assertEquals(4, countEntries(zip));
+        assertTrue(hasCentralDirectory(zip));
+        mockMvc.perform(post("/api/invoice/bulk").with(request -> {
+                            request.setRemoteAddr("10.0.0.2");
+                            return request;
+                        })
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "100"));
+        assertEquals(0, admissionControl.getActive());
+    }
+
+    @Test
+    public void testFailedBulkIsIncomplete() throws Exception {
+        PdfAdmissionControl admissionControl = pdfInvoiceType.getAdmissionControl();
+        List<InvoiceLine> lines = List.of(new InvoiceLine(new ProductEntity("Bulk Item", 4), 1));
+        AtomicInteger executions = new AtomicInteger();
+        // renders the first invoice, and fails on the second
+        Executor executor = command -> {
+            if(executions.getAndIncrement() > 0)
+                throw new RejectedExecutionException("shut down");
+            command.run();
+        };
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        BulkInvoiceWriter writer = new BulkInvoiceWriter(executor, pdfInvoiceType, 1);
+        assertThrows(IOException.class, () -> writer.writeZip(List.of(lines, lines), new long[]{4, 4}, admissionControl.acquire("10.0.0.3"), outputStream));
+
+        assertEquals(1, countEntries(outputStream.toByteArray()));
+        assertFalse(hasCentralDirectory(outputStream.toByteArray()));
+        assertEquals(0, admissionControl.getActive());
+    }
+
+    private static int countEntries(byte[] zip) throws IOException {
+        int entries = 0;
+        try(ZipInputStream inputStream = new ZipInputStream(new ByteArrayInputStream(zip))) {
+            while(inputStream.getNextEntry() != null)
+                entries++;
+        }
+        return entries;
+    }
+
+    /**
+     * @return Whether the ZIP file ends with the end of central directory record, that a complete file has.
+     */
+    private static boolean hasCentralDirectory(byte[] zip) {
+        // the record is 22 bytes long without a comment
+        int offset = zip.length - 22;
+        return offset >= 0 && zip[offset] == 'P' && zip[offset + 1] == 'K' && zip[offset + 2] == 5 && zip[offset + 3] == 6;
+    }
+}
@@ -0,0 +1,123 @@
+package me.robi.invoicesystem;
+
+import me.robi.invoicesystem.constants.PathConstants;
+import me.robi.invoicesystem.controllers.invoice.types.InvoiceLine;
+import me.robi.invoicesystem.controllers.invoice.types.PdfFileCache;
+import me.robi.invoicesystem.controllers.invoice.types.PdfInvoiceType;
+import me.robi.invoicesystem.entities.ProductEntity;
+import org.apache.tomcat.util.http.fileupload.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PdfFileCacheTest {
+    private final Path directory = Paths.get(PathConstants.TEST_PDF_FILE_STORAGE);
+
+    @BeforeEach
+    public void createDirectory() throws Exception {
+        Files.createDirectories(directory);
+    }
+
+    @AfterEach
+    public void deleteDirectory() throws Exception {
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    @Test
+    public void testFileName() {
+        ProductEntity first = new ProductEntity("TestItem 1", 7);
+        ProductEntity second = new ProductEntity("TestItem 2", 14);
+        ReflectionTestUtils.setField(first, "id", 1L);
+        ReflectionTestUtils.setField(second, "id", 2L);
+
+        String fileName = PdfInvoiceType.getFileName(Arrays.asList(new InvoiceLine(first, 1), new InvoiceLine(second, 2)));
+        assertTrue(fileName.matches("[0-9a-f]{32}\\.pdf"));
+        assertEquals(fileName, PdfInvoiceType.getFileName(Arrays.asList(new InvoiceLine(first, 1), new InvoiceLine(second, 2))));
+        assertNotEquals(fileName, PdfInvoiceType.getFileName(Arrays.asList(new InvoiceLine(second, 2), new InvoiceLine(first, 1))));
+        assertNotEquals(fileName, PdfInvoiceType.getFileName(Arrays.asList(new InvoiceLine(first, 1), new InvoiceLine(second, 3))));
+
+        second.setAmount(15);
+        assertNotEquals(fileName, PdfInvoiceType.getFileName(Arrays.asList(new InvoiceLine(first, 1), new InvoiceLine(second, 2))));
+    }
+
+    @Test
+    public void testCoalescing() throws Exception {
+        PdfFileCache cache = new PdfFileCache(directory, 10, Duration.ofDays(1));
+        AtomicInteger generations = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Path>> futures = new ArrayList<>();
+        for(int i = 0; i < 8; i++)
+            futures.add(executor.submit(() -> {
+                start.await();
+                return cache.get("coalesced.pdf", file -> {
+                    generations.incrementAndGet();
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+                    Files.write(file, new byte[]{1, 2, 3});
+                });
+            }));
+        start.countDown();
+        for(Future<Path> future : futures)
+            assertEquals(directory.resolve("co/al/coalesced.pdf"), future.get(5, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        assertEquals(1, generations.get());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(7, cache.getHitCount());
+    }
+
+    @Test
+    public void testLookupsAreNotCounted() throws Exception {
+        PdfFileCache cache = new PdfFileCache(directory, 10, Duration.ofDays(1));
+        cache.get("counted.pdf", file -> Files.write(file, new byte[]{1}));
+        cache.get("counted.pdf", file -> fail("File should not be generated again"));
+
+        // downloads and status polls look the file up without rendering it
+        for(int i = 0; i < 5; i++) {
+            assertNotNull(cache.getIfPresent("counted.pdf"));
+            assertNotNull(cache.find("counted.pdf"));
+        }
+        assertNull(cache.find("missing.pdf"));
+
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testRebuildAndBounds() throws Exception {
+        for(int i = 0; i < 5; i++) {
+            Files.write(directory.resolve("file" + i + ".pdf"), new byte[]{1});
+            Files.setLastModifiedTime(directory.resolve("file" + i + ".pdf"), FileTime.fromMillis(System.currentTimeMillis() - (5 - i) * 1000L));
+        }
+
+        PdfFileCache cache = new PdfFileCache(directory, 3, Duration.ofDays(1));
+        cache.rebuild();
+        assertEquals(3, cache.size());
+
+        // the oldest files are deleted, the others are moved into their subdirectory
+        assertFalse(Files.exists(directory.resolve("fi/le/file0.pdf")));
+        assertTrue(Files.exists(directory.resolve("fi/le/file4.pdf")));
+        assertFalse(Files.exists(directory.resolve("file4.pdf")));
+
+        // already existing files are not generated again
+        cache.get("file2.pdf", file -> fail("File should not be generated again"));
+        cache.get("file4.pdf", file -> fail("File should not be generated again"));
+        assertTrue(cache.size() <= 3);
+    }
+}
@@ -0,0 +1,89 @@
+package me.robi.invoicesystem;
+
+import me.robi.invoicesystem.constants.PathConstants;
+import me.robi.invoicesystem.controllers.invoice.types.PdfStorage;
+import org.apache.tomcat.util.http.fileupload.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PdfStorageTest {
+    private final Path directory = Paths.get(PathConstants.TEST_PDF_FILE_STORAGE);
+
+    @AfterEach
+    public void deleteDirectory() throws Exception {
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    @Test
+    public void testAtomicWrite() throws Exception {
+        PdfStorage storage = new PdfStorage(directory, Long.MAX_VALUE, 10, Duration.ofDays(1));
+        storage.rebuild();
+        Path target = storage.resolve("0123abcd.pdf");
+        assertEquals(directory.resolve("01/23/0123abcd.pdf"), target);
+
+        // the file is not visible while it's being written
+        Path written = storage.write("0123abcd.pdf", file -> {
+            Files.write(file, new byte[]{1, 2});
+            assertFalse(Files.exists(target));
+            assertNull(storage.find("0123abcd.pdf"));
+        });
+        assertEquals(target, written);
+        assertEquals(target, storage.find("0123abcd.pdf"));
+        assertEquals(2, storage.getTotalBytes());
+
+        // a failing write leaves nothing behind
+        assertThrows(IOException.class, () -> storage.write("4567abcd.pdf", file -> {
+            Files.write(file, new byte[]{1});
+            throw new IOException("Failed");
+        }));
+        assertNull(storage.find("4567abcd.pdf"));
+        assertFalse(Files.exists(storage.resolve("4567abcd.pdf")));
+        try(var temp = Files.list(directory.resolve(PdfStorage.TEMP_DIRECTORY))) {
+            assertEquals(0, temp.count());
+        }
+    }
+
+    @Test
+    public void testSizeBoundEvictsLeastRecentlyAccessed() throws Exception {
+        PdfStorage storage = new PdfStorage(directory, 30, 100, Duration.ofDays(1));
+        storage.rebuild();
+        for(int i = 0; i < 3; i++) {
+            storage.write("file" + i + ".pdf", file -> Files.write(file, new byte[10]));
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+        }
+        storage.find("file0.pdf");
+        storage.write("file3.pdf", file -> Files.write(file, new byte[10]));
+
+        storage.clean();
+        assertEquals(3, storage.size());
+        assertEquals(30, storage.getTotalBytes());
+        assertNull(storage.find("file1.pdf"));
+        assertFalse(Files.exists(storage.resolve("file1.pdf")));
+        assertNotNull(storage.find("file0.pdf"));
+        assertEquals(1, storage.getEvictionCount());
+    }
+
+    @Test
+    public void testMaxAge() throws Exception {
+        PdfStorage storage = new PdfStorage(directory, Long.MAX_VALUE, 100, Duration.ofMillis(50));
+        storage.rebuild();
+        storage.write("expired.pdf", file -> Files.write(file, new byte[]{1}));
+        assertNotNull(storage.find("expired.pdf"));
+
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+        assertNull(storage.find("expired.pdf"));
+        storage.clean();
+        assertEquals(0, storage.size());
+        assertFalse(Files.exists(storage.resolve("expired.pdf")));
+    }
+}
@@ -0,0 +1,187 @@
+package me.robi.invoicesystem;
+
+import me.robi.invoicesystem.constants.PathConstants;
+import me.robi.invoicesystem.controllers.invoice.types.PdfFileCache;
+import me.robi.invoicesystem.controllers.invoice.types.PdfStorage;
+import me.robi.invoicesystem.controllers.invoice.types.PdfStore;
+import me.robi.invoicesystem.controllers.invoice.types.SharedDirectoryPdfStore;
+import org.apache.tomcat.util.http.fileupload.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PdfStoreTest {
+    private final Path directory = Paths.get(PathConstants.TEST_PDF_FILE_STORAGE);
+    private final PdfStore store = new SharedDirectoryPdfStore(directory.resolve("shared"));
+
+    @AfterEach
+    public void deleteDirectory() throws Exception {
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    private PdfFileCache node(String name, PdfStore store) {
+        return new PdfFileCache(new PdfStorage(directory.resolve(name), Long.MAX_VALUE, 100, Duration.ofDays(1)), store);
+    }
+
+    @Test
+    public void reusesFileOfOtherNode() throws Exception {
+        PdfFileCache first = node("first", store);
+        PdfFileCache second = node("second", store);
+        AtomicInteger generated = new AtomicInteger();
+
+        Path rendered = first.get("abcd.pdf", path -> {
+            generated.incrementAndGet();
+            Files.writeString(path, "invoice");
+        });
+        Path fetched = second.get("abcd.pdf", path -> {
+            generated.incrementAndGet();
+            Files.writeString(path, "rendered again");
+        });
+
+        assertEquals(1, generated.get());
+        assertNotEquals(rendered, fetched);
+        assertEquals("invoice", Files.readString(fetched));
+        assertEquals(1, first.getMissCount());
+        assertEquals(0, second.getMissCount());
+        assertEquals(1, second.getStoreHitCount());
+        assertEquals(fetched, second.getIfPresent("abcd.pdf"));
+    }
+
+    @Test
+    public void findsFileOfOtherNode() throws Exception {
+        PdfFileCache first = node("first", store);
+        PdfFileCache second = node("second", store);
+
+        first.get("abcd.pdf", path -> Files.writeString(path, "invoice"));
+
+        assertNull(second.getIfPresent("abcd.pdf"));
+        Path found = second.find("abcd.pdf");
+        assertNotNull(found);
+        assertEquals("invoice", Files.readString(found));
+        assertNull(second.find("ef01.pdf"));
+        assertEquals(1, second.getStoreHitCount());
+    }
+
+    @Test
+    public void rendersWhenStoreFails() throws Exception {
+        PdfStore broken = new PdfStore() {
+            @Override
+            public boolean contains(String fileName) throws IOException {
+                throw new IOException("unreachable");
+            }
+
+            @Override
+            public void fetch(String fileName, Path target) throws IOException {
+                throw new IOException("unreachable");
+            }
+
+            @Override
+            public void put(String fileName, Path file) throws IOException {
+                throw new IOException("unreachable");
+            }
+        };
+        PdfFileCache cache = node("first", broken);
+
+        Path file = cache.get("abcd.pdf", path -> Files.writeString(path, "invoice"));
+
+        assertEquals("invoice", Files.readString(file));
+        assertEquals(1, cache.getMissCount());
+        // asked before and after claiming the file, and published to
+        assertEquals(3, cache.getStoreErrorCount());
+        assertNull(cache.find("ef01.pdf"));
+        assertEquals(4, cache.getStoreErrorCount());
+    }
+
+    @Test
+    public void waitsForClaimOfOtherNode() throws Exception {
+        PdfFileCache first = node("first", store);
+        PdfFileCache second = node("second", store);
+        AtomicInteger generated = new AtomicInteger();
+        CountDownLatch rendering = new CountDownLatch(1);
+        CountDownLatch waiting = new CountDownLatch(1);
+
+        CompletableFuture<Path> rendered = CompletableFuture.supplyAsync(() -> {
+            try {
+                return first.get("abcd.pdf", path -> {
+                    generated.incrementAndGet();
+                    rendering.countDown();
+                    try {
+                        waiting.await();
+                        Thread.sleep(100);
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                    Files.writeString(path, "invoice");
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        rendering.await();
+        CompletableFuture<Path> fetched = CompletableFuture.supplyAsync(() -> {
+            waiting.countDown();
+            try {
+                return second.get("abcd.pdf", path -> {
+                    generated.incrementAndGet();
+                    Files.writeString(path, "rendered again");
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        assertEquals("invoice", Files.readString(rendered.get(5, TimeUnit.SECONDS)));
+        assertEquals("invoice", Files.readString(fetched.get(5, TimeUnit.SECONDS)));
+        assertEquals(1, generated.get());
+        assertEquals(0, second.getMissCount());
+        // the claim is released once published
+        assertTrue(store.claim("abcd.pdf"));
+    }
+
+    @Test
+    public void takesOverStaleClaim() throws Exception {
+        PdfStore claims = new SharedDirectoryPdfStore(directory.resolve("shared"), Duration.ofMillis(100));
+
+        assertTrue(claims.claim("abcd.pdf"));
+        assertFalse(claims.claim("abcd.pdf"));
+        claims.release("abcd.pdf");
+        assertTrue(claims.claim("abcd.pdf"));
+
+        // the node holding the claim died
+        Thread.sleep(150);
+        assertTrue(claims.claim("abcd.pdf"));
+    }
+
+    @Test
+    public void remembersMissingFiles() throws Exception {
+        AtomicInteger lookups = new AtomicInteger();
+        PdfStore counting = new SharedDirectoryPdfStore(directory.resolve("shared")) {
+            @Override
+            public boolean contains(String fileName) {
+                lookups.incrementAndGet();
+                return super.contains(fileName);
+            }
+        };
+        PdfFileCache cache = node("first", counting);
+
+        assertNull(cache.find("ef01.pdf"));
+        assertNull(cache.find("ef01.pdf"));
+        assertEquals(1, lookups.get());
+
+        // rendered here in the meantime
+        cache.get("ef01.pdf", path -> Files.writeString(path, "invoice"));
+        assertNotNull(cache.find("ef01.pdf"));
+    }
+}
@@ -0,0 +1,147 @@
+package me.robi.invoicesystem;
+
+import me.robi.invoicesystem.entities.ProductEntity;
+import me.robi.invoicesystem.repositories.ProductCatalog;
+import me.robi.invoicesystem.repositories.ProductQuantities;
+import me.robi.invoicesystem.repositories.ProductRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+public class ProductCatalogTest {
+    @Autowired
+    private ProductRepository repository;
+
+    @Autowired
+    private ProductCatalog catalog;
+
+    @Test
+    public void testReadThrough() {
+        ProductEntity product = repository.save(new ProductEntity("Cached Item", 3));
+        long[] ids = {product.getId(), product.getId(), -1};
+
+        catalog.getProducts(ids);
+        long hits = catalog.getHitCount();
+        ProductEntity[] products = catalog.getProducts(ids);
+
+        assertEquals("Cached Item", products[0].getName());
+        assertSame(products[0], products[1]);
+        assertNull(products[2]);
+        assertEquals(hits + 2, catalog.getHitCount());
+    }
+
+    @Test
+    public void testInvalidationOnSave() {
+        ProductEntity product = repository.save(new ProductEntity("Old Name", 5));
+        assertEquals("Old Name", catalog.getProducts(new long[]{product.getId()})[0].getName());
+        assertTrue(catalog.findAll().stream().anyMatch(p -> p.getId() == product.getId()));
+
+        long version = catalog.getVersion();
+        product.setName("New Name");
+        repository.save(product);
+
+        assertTrue(catalog.getVersion() > version);
+        assertEquals("New Name", catalog.getProducts(new long[]{product.getId()})[0].getName());
+        assertTrue(catalog.findAll().stream().anyMatch(p -> p.getName().equals("New Name")));
+    }
+
+    @Test
+    public void testInvalidationOnDelete() {
+        ProductEntity product = repository.save(new ProductEntity("Deleted Item", 8));
+        assertNotNull(catalog.getProducts(new long[]{product.getId()})[0]);
+
+        repository.delete(product);
+
+        assertNull(catalog.getProducts(new long[]{product.getId()})[0]);
+        assertTrue(catalog.findAll().stream().noneMatch(p -> p.getId() == product.getId()));
+    }
+
+    @Test
+    public void testStreamAll() {
+        ProductEntity product = repository.save(new ProductEntity("Streamed Item", 2));
+        List<ProductEntity> streamed = new ArrayList<>();
+        repository.streamAll(streamed::add);
+
+        assertEquals(repository.count(), streamed.size());
+        assertTrue(streamed.stream().anyMatch(p -> p.getId() == product.getId()));
+        for(int i = 1; i < streamed.size(); i++)
+            assertTrue(streamed.get(i - 1).getId() < streamed.get(i).getId());
+    }
+
+    @Test
+    public void testSummarize() {
+        ProductEntity large = repository.save(new ProductEntity("Large Item", Integer.MAX_VALUE));
+        ProductEntity small = repository.save(new ProductEntity("Small Item", 4));
+        long[] ids = {large.getId(), small.getId(), large.getId(), small.getId(), large.getId()};
+        long expected = 3L * Integer.MAX_VALUE + 8;
+
+        catalog.invalidateAll();
+        long misses = catalog.getMissCount();
+        ProductCatalog.Summary summary = catalog.summarize(ProductQuantities.of(ids));
+        assertEquals(5, summary.getLineCount());
+        assertEquals(expected, summary.getAmountSum());
+        assertTrue(summary.getMissingIds().isEmpty());
+        assertTrue(catalog.getMissCount() > misses);
+        assertEquals(0, catalog.size());
+
+        // served from memory once the products are cached
+        catalog.getProducts(ids);
+        long hits = catalog.getHitCount();
+        assertEquals(expected, catalog.summarize(ProductQuantities.of(ids)).getAmountSum());
+        assertEquals(hits + 2, catalog.getHitCount());
+
+        ProductQuantities quantities = new ProductQuantities();
+        quantities.add(small.getId(), 10);
+        quantities.add(large.getId(), 1);
+        quantities.add(small.getId(), 5);
+        ProductCatalog.Summary weighted = catalog.summarize(quantities);
+        assertEquals(16, weighted.getLineCount());
+        assertEquals(Integer.MAX_VALUE + 60L, weighted.getAmountSum());
+
+        ProductCatalog.Summary missing = catalog.summarize(ProductQuantities.of(-2, small.getId(), -1, -2));
+        assertEquals(List.of(-2L, -1L), new ArrayList<>(missing.getMissingIds()));
+    }
+
+    @Test
+    public void testSummarizeOverflow() {
+        ProductEntity large = repository.save(new ProductEntity("Large Item", Integer.MAX_VALUE));
+        ProductQuantities quantities = new ProductQuantities();
+        quantities.add(large.getId(), Long.MAX_VALUE / 2);
+
+        catalog.invalidateAll();
+        assertThrows(ArithmeticException.class, () -> catalog.summarize(quantities));
+
+        catalog.getProducts(new long[]{large.getId()});
+        assertThrows(ArithmeticException.class, () -> catalog.summarize(quantities));
+    }
+
+    @Test
+    public void testChangeLog() {
+        ProductCatalog catalog = new ProductCatalog();
+        ReflectionTestUtils.setField(catalog, "changeLogSize", 3);
+        long version = catalog.getVersion();
+
+        assertTrue(catalog.getChangedIds(version).isEmpty());
+        catalog.invalidate(1);
+        catalog.invalidate(2);
+        catalog.invalidate(1);
+        assertEquals(List.of(2L, 1L), new ArrayList<>(catalog.getChangedIds(version + 1)));
+        assertEquals(List.of(1L, 2L), new ArrayList<>(catalog.getChangedIds(version)));
+
+        catalog.invalidate(3);
+        assertNull(catalog.getChangedIds(version));
+        assertEquals(List.of(2L, 1L, 3L), new ArrayList<>(catalog.getChangedIds(version + 1)));
+        assertNull(catalog.getChangedIds(catalog.getVersion() + 1));
+
+        catalog.invalidateAll();
+        assertNull(catalog.getChangedIds(version + 1));
+        assertTrue(catalog.getChangedIds(catalog.getVersion()).isEmpty());
+    }
+}
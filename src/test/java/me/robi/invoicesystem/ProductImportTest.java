@@ -0,0 +1,98 @@
+package me.robi.invoicesystem;
+
+import me.robi.invoicesystem.entities.ProductEntity;
+import me.robi.invoicesystem.repositories.ProductRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static me.robi.invoicesystem.constants.ResponseConstants.ImportResponseConstants.IMPORTED_ROWS;
+import static me.robi.invoicesystem.constants.ResponseConstants.ImportResponseConstants.ROWS_PER_SECOND;
+import static me.robi.invoicesystem.constants.ResponseConstants.RESPONSE_STATUS;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {"invoice.import.chunk-size=2", "spring.jpa.properties.hibernate.jdbc.batch_size=2"})
+@AutoConfigureMockMvc
+public class ProductImportTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ProductRepository repository;
+
+    @Test
+    public void testCsvImport() throws Exception {
+        long count = repository.count();
+        String csv = "amount,id,name\r\n3,,Imported 1\r\n4,,\"Imported, \"\"quoted\"\"\"\r\n5,7,\"Imported\n3\"\r\n\r\n";
+
+        mockMvc.perform(post("/api/products/import").contentType("text/csv").content(csv))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$." + IMPORTED_ROWS).value(3))
+                .andExpect(jsonPath("$." + ROWS_PER_SECOND).isNumber());
+
+        assertEquals(count + 3, repository.count());
+        List<String> names = new ArrayList<>();
+        repository.findAll().forEach(product -> names.add(product.getName()));
+        assertTrue(names.containsAll(List.of("Imported 1", "Imported, \"quoted\"", "Imported\n3")));
+    }
+
+    @Test
+    public void testNdjsonImport() throws Exception {
+        long count = repository.count();
+        String ndjson = "{\"name\":\"Json 1\",\"amount\":1}\n{\"name\":\"Json 2\",\"amount\":2}\n{\"name\":\"Json 3\",\"amount\":3}\n";
+
+        mockMvc.perform(post("/api/products/import").contentType(MediaType.APPLICATION_NDJSON).content(ndjson))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$." + IMPORTED_ROWS).value(3));
+
+        assertEquals(count + 3, repository.count());
+        ProductEntity[] imported = new ProductEntity[1];
+        repository.findAll().forEach(product -> {
+            if(product.getName().equals("Json 3"))
+                imported[0] = product;
+        });
+        assertEquals(3, imported[0].getAmount());
+    }
+
+    @Test
+    public void testMalformedRow() throws Exception {
+        long count = repository.count();
+        String csv = "name,amount\nBroken 1,1\nBroken 2,2\nBroken 3,3\nBroken 4,many\n";
+
+        // the first chunk of two rows is committed, the chunk of the malformed row is never inserted
+        mockMvc.perform(post("/api/products/import").contentType("text/csv").content(csv))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$." + RESPONSE_STATUS, startsWith("Line 5:")))
+                .andExpect(jsonPath("$." + IMPORTED_ROWS).value(2));
+        assertEquals(count + 2, repository.count());
+
+        mockMvc.perform(post("/api/products/import").contentType(MediaType.APPLICATION_NDJSON).content("{\"name\":\"No Amount\"}\n"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$." + IMPORTED_ROWS).value(0));
+        mockMvc.perform(post("/api/products/import").contentType("text/csv").content("id,title\n1,Item\n"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testRowRejectedOnCommit() throws Exception {
+        long count = repository.count();
+        // the last chunk holds a single row, which is only flushed when its transaction commits
+        String csv = "name,amount\nCommitted 1,1\nCommitted 2,2\n" + "x".repeat(1000) + ",3\n";
+
+        mockMvc.perform(post("/api/products/import").contentType("text/csv").content(csv))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$." + RESPONSE_STATUS, startsWith("Rows up to line 4:")))
+                .andExpect(jsonPath("$." + IMPORTED_ROWS).value(2));
+        assertEquals(count + 2, repository.count());
+    }
+}
@@ -0,0 +1,92 @@
+package me.robi.invoicesystem;
+
+import me.robi.invoicesystem.constants.PathConstants;
+import me.robi.invoicesystem.controllers.invoice.types.PdfInvoiceType;
+import me.robi.invoicesystem.entities.ProductEntity;
+import me.robi.invoicesystem.repositories.ProductRepository;
+import org.apache.tomcat.util.http.fileupload.FileUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static me.robi.invoicesystem.constants.ResponseConstants.REDIRECT_URL;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "invoice.pdf.storage-directory=" + PathConstants.TEST_PDF_FILE_STORAGE)
+@AutoConfigureMockMvc
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class RenderExecutorTest {
+    private static final AtomicInteger renders = new AtomicInteger();
+
+    @TestConfiguration
+    static class RenderExecutorConfig {
+        @Bean(PdfInvoiceType.PDF_RENDER_EXECUTOR)
+        public Executor pdfRenderExecutor() {
+            Executor executor = Executors.newSingleThreadExecutor();
+            return runnable -> executor.execute(() -> {
+                renders.incrementAndGet();
+                runnable.run();
+            });
+        }
+    }
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ProductRepository repository;
+
+    private final Path directory = Paths.get(PathConstants.TEST_PDF_FILE_STORAGE);
+
+    @BeforeAll
+    public void createDirectory() throws Exception {
+        Files.createDirectories(directory);
+    }
+
+    @AfterAll
+    public void deleteDirectory() throws Exception {
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    @Test
+    public void testRenderOnExecutor() throws Exception {
+        ProductEntity product = repository.save(new ProductEntity("Executor Item", 12));
+
+        int before = renders.get();
+        mockMvc.perform(get("/api/invoice/pdf").param("id", String.valueOf(product.getId())))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$." + REDIRECT_URL).exists());
+        assertEquals(before + 1, renders.get());
+
+        mockMvc.perform(get("/api/invoice/pdf-stream").param("id", String.valueOf(product.getId())))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_PDF));
+        assertEquals(before + 2, renders.get());
+
+        mockMvc.perform(post("/api/invoice/bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(String.format("[[%1$d], [%1$d, %1$d]]", product.getId())))
+                .andExpect(status().isOk());
+        assertEquals(before + 4, renders.get());
+    }
+}